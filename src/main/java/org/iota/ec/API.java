@@ -63,6 +63,8 @@ class API {
             case "get_tangle":
                 String transaction = requestJSON.getString("transaction");
                 return success.put("tangle", getTangle(transaction));
+            case "get_tick_metrics":
+                return success.put("tick_metrics", module.getTickMetrics());
             /* ***** DO ***** */
             case "create_actor":
                 String actorAddress = module.createNewActor(SerializableAutoIndexableMerkleTree.fromJSON(requestJSON));
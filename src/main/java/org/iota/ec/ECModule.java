@@ -4,6 +4,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.iota.ec.model.AutonomousEconomicActor;
 import org.iota.ec.model.EconomicActor;
+import org.iota.ec.model.LedgerValidator;
+import org.iota.ec.model.TransferVerifier;
 import org.iota.ec.model.TrustedEconomicActor;
 import org.iota.ec.model.EconomicCluster;
 import org.iota.ec.util.SerializableAutoIndexableMerkleTree;
@@ -30,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ECModule extends IxiModule {
 
@@ -41,15 +44,28 @@ public class ECModule extends IxiModule {
     private final EEEFunction confidenceEEEFunction = new EEEFunction(new FunctionEnvironment("EC.ixi", "confidence"));
     private final API api;
     private final EconomicCluster cluster;
-    private final List<AutonomousEconomicActor> autonomousActors = new LinkedList<>();
+    private final List<AutonomousEconomicActor> autonomousActors = new CopyOnWriteArrayList<>();
+    private final TransferVerifier transferVerifier = new TransferVerifier(Runtime.getRuntime().availableProcessors(), TransferVerifier.DEFAULT_CACHE_CAPACITY);
+    private final TickScheduler tickScheduler = new TickScheduler(TickScheduler.DEFAULT_WORKERS, TickScheduler.DEFAULT_DEBOUNCE,
+            TickScheduler.DEFAULT_MIN_INTERVAL, TickScheduler.DEFAULT_TICK_BUDGET);
+    private final Runnable tickTrigger = new Runnable() {
+        @Override
+        public void run() {
+            tickScheduler.scheduleAll(autonomousActors);
+        }
+    };
     private final List<String> transfers = new LinkedList<>();
     private final Map<String, BigInteger> initialBalances = new HashMap<>();
+    private final LedgerValidator ledgerValidator;
 
     private final IxiContext context = new ECContext();
 
     public ECModule(Ixi ixi) {
         super(ixi);
         this.cluster = new EconomicCluster(ixi);
+        this.cluster.setTransferVerifier(transferVerifier);
+        this.ledgerValidator = new LedgerValidator(ixi, initialBalances);
+        this.ledgerValidator.setTransferVerifier(transferVerifier);
         this.api = new API(this);
     }
 
@@ -123,6 +139,9 @@ public class ECModule extends IxiModule {
         Persistence.load(this);
         logger.info("completed loading from persistence");
         ixi.addListener(confidenceEEEFunction);
+        ixi.addListener(ledgerValidator);
+        cluster.addMarkerListener(tickTrigger);
+        ledgerValidator.addDependencyListener(tickTrigger);
         test();
     }
 
@@ -132,6 +151,12 @@ public class ECModule extends IxiModule {
         Persistence.store(this);
         logger.info("completed storing to persistence");
         ixi.removeListener(confidenceEEEFunction);
+        cluster.removeMarkerListener(tickTrigger);
+        ledgerValidator.removeDependencyListener(tickTrigger);
+        ledgerValidator.shutdown();
+        tickScheduler.shutdown();
+        transferVerifier.shutdown();
+        cluster.shutdown();
         runningThread.interrupt();
     }
 
@@ -159,16 +184,31 @@ public class ECModule extends IxiModule {
         if(actor == null)
             throw new IllegalArgumentException("None of the actors controlled by you has the address '"+actorAddress+"'");
 
-        if(ref1.isEmpty() || ref2.isEmpty()) {
-            actor.tick();
-        } else {
-            String tangle = EconomicActor.tangleID(ref1, ref2);
-            if(!actor.isTangleValid(tangle))
-                throw new IllegalArgumentException("Invalid tangle defined by " + ref1 + " and " + ref2);
-            actor.tick(Collections.singleton(tangle));
+        // the tick scheduler might tick the same actor concurrently
+        synchronized (actor) {
+            if(ref1.isEmpty() || ref2.isEmpty()) {
+                actor.tick();
+            } else {
+                String tangle = EconomicActor.tangleID(ref1, ref2);
+                if(!actor.isTangleValid(tangle))
+                    throw new IllegalArgumentException("Invalid tangle defined by " + ref1 + " and " + ref2);
+                actor.tick(Collections.singleton(tangle));
+            }
         }
     }
 
+    JSONObject getTickMetrics() {
+        return new JSONObject()
+                .put("queue_depth", tickScheduler.getQueueDepth())
+                .put("active_ticks", tickScheduler.getActiveTicks())
+                .put("ticks", tickScheduler.getTicks())
+                .put("incomplete_ticks", tickScheduler.getIncompleteTicks())
+                .put("failed_ticks", tickScheduler.getFailedTicks())
+                .put("average_tick_duration", tickScheduler.getAverageTickDuration())
+                .put("max_tick_duration", tickScheduler.getMaxTickDuration())
+                .put("last_tick_duration", tickScheduler.getLastTickDuration());
+    }
+
     double getConfidence(String hash) {
         return cluster.determineApprovalConfidence(hash);
     }
@@ -189,7 +229,8 @@ public class ECModule extends IxiModule {
     }
 
     String createNewActor(SerializableAutoIndexableMerkleTree merkleTree) {
-        AutonomousEconomicActor actor = new AutonomousEconomicActor(ixi, cluster, initialBalances, merkleTree);
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ixi, cluster, ledgerValidator, merkleTree);
+        actor.setIncremental(true);
         autonomousActors.add(actor);
         return actor.getAddress();
     }
@@ -199,18 +240,19 @@ public class ECModule extends IxiModule {
         if(actor == null)
             throw new IllegalArgumentException("You do not own an actor with address '"+address+"'.");
         autonomousActors.remove(actor);
+        tickScheduler.forget(actor);
     }
 
     void setTrust(String address, double trust) {
 
         TrustedEconomicActor actor;
         if((actor = findTrustedActor(address)) != null) {
-            actor.setTrust(trust);
+            cluster.setTrust(actor, trust);
             if(trust == 0) {
                 cluster.removeActor(actor);
             }
         } else if(trust > 0) {
-            TrustedEconomicActor trustedEconomicActor = new TrustedEconomicActor(address, trust);
+            TrustedEconomicActor trustedEconomicActor = new TrustedEconomicActor(address, trust, cluster.getTransactionNumbering());
             cluster.addActor(trustedEconomicActor, true);
         }
     }
@@ -324,9 +366,10 @@ public class ECModule extends IxiModule {
 
     public void changeInitialBalance(String address, BigInteger toAdd) {
         initialBalances.put(address, initialBalances.getOrDefault(address, BigInteger.ZERO).add(toAdd));
-        for(AutonomousEconomicActor actor : autonomousActors) {
-            actor.changeInitialBalance(address, toAdd);
-        }
+        // applies to all actors since they share the validator
+        ledgerValidator.changeInitialBalance(address, toAdd);
+        // affected Tangles are re-evaluated in the next tick
+        tickScheduler.scheduleAll(autonomousActors);
     }
 
     public void watchTransfer(String bundleHead) {
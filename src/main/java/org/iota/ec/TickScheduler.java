@@ -0,0 +1,219 @@
+package org.iota.ec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.iota.ec.model.AutonomousEconomicActor;
+import org.iota.ec.model.TickResult;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ticks autonomous actors in response to new markers. A burst of markers is debounced into a single tick, each actor is
+ * ticked at most once per minimum interval and never concurrently with itself. Different actors are ticked in parallel
+ * on a bounded pool of worker threads. Incomplete ticks are retried without new markers, but with exponentially growing
+ * intervals and at most {@link #MAX_INCOMPLETE_RETICKS} times in a row.
+ * */
+class TickScheduler {
+
+    static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+    static final long DEFAULT_DEBOUNCE = 200;
+    static final long DEFAULT_MIN_INTERVAL = 1000;
+    static final long DEFAULT_TICK_BUDGET = 5000;
+    static final int MAX_INCOMPLETE_RETICKS = 5;
+
+    private static final Logger logger = LogManager.getLogger("EC.ixi");
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final long debounce, minInterval, tickBudget;
+    private final Map<AutonomousEconomicActor, ActorState> stateByActor = new ConcurrentHashMap<>();
+
+    private long ticks = 0, failedTicks = 0, incompleteTicks = 0;
+    private long totalTickDuration = 0, maxTickDuration = 0, lastTickDuration = 0;
+
+    /**
+     * @param workers Maximum amount of actors ticked in parallel.
+     * @param debounce Time in milliseconds to wait for further markers before ticking.
+     * @param minInterval Minimum time in milliseconds between the starts of two ticks of the same actor.
+     * @param tickBudget Time budget in milliseconds of each tick.
+     * */
+    TickScheduler(int workers, long debounce, long minInterval, long tickBudget) {
+        this(new ScheduledThreadPoolExecutor(workers, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EC.ixi-tick-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), debounce, minInterval, tickBudget);
+    }
+
+    /**
+     * @param executor Executor to run the ticks on, e.g. one which runs them on demand in tests.
+     * */
+    TickScheduler(ScheduledThreadPoolExecutor executor, long debounce, long minInterval, long tickBudget) {
+        this.debounce = debounce;
+        this.minInterval = minInterval;
+        this.tickBudget = tickBudget;
+        this.executor = executor;
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    void scheduleAll(Collection<AutonomousEconomicActor> actors) {
+        for(AutonomousEconomicActor actor : actors)
+            schedule(actor);
+    }
+
+    /**
+     * Schedules a tick of the actor unless one is already pending. If the actor is currently ticking, another tick will
+     * be scheduled once it is done.
+     * */
+    void schedule(final AutonomousEconomicActor actor) {
+        if(executor.isShutdown())
+            return;
+        final ActorState state = stateByActor.computeIfAbsent(actor, new Function<AutonomousEconomicActor, ActorState>() {
+            @Override
+            public ActorState apply(AutonomousEconomicActor actor) {
+                return new ActorState();
+            }
+        });
+        synchronized (state) {
+            // new markers are worth further attempts to complete the skipped Tangles
+            state.incompleteTicksInARow = 0;
+            if(state.scheduled)
+                return;
+            if(state.running) {
+                state.requestedWhileRunning = true;
+                return;
+            }
+            scheduleTick(actor, state, minInterval);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of the state.
+     * @param interval Minimum time in milliseconds between the start of the last tick and the start of the scheduled one.
+     * */
+    private void scheduleTick(final AutonomousEconomicActor actor, final ActorState state, long interval) {
+        if(executor.isShutdown() || stateByActor.get(actor) != state)
+            return;
+        state.scheduled = true;
+        long delay = Math.max(debounce, state.lastStart + interval - System.currentTimeMillis());
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runTick(actor, state);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops scheduling ticks for the actor, e.g. because it was deleted. A tick already in progress is completed.
+     * */
+    void forget(AutonomousEconomicActor actor) {
+        stateByActor.remove(actor);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void runTick(AutonomousEconomicActor actor, ActorState state) {
+        synchronized (state) {
+            state.scheduled = false;
+            state.running = true;
+            state.lastStart = System.currentTimeMillis();
+        }
+
+        boolean complete = true;
+        try {
+            TickResult result;
+            synchronized (actor) {
+                result = actor.tick(Collections.<String>emptySet(), tickBudget);
+            }
+            complete = result.isComplete();
+            recordTick(result.getDuration(), complete);
+        } catch (Throwable t) {
+            recordFailedTick();
+            logger.error("tick of actor " + actor.getAddress() + " failed", t);
+        } finally {
+            synchronized (state) {
+                state.running = false;
+                state.incompleteTicksInARow = complete ? 0 : state.incompleteTicksInARow + 1;
+                if(state.requestedWhileRunning)
+                    scheduleTick(actor, state, minInterval);
+                else if(!complete && state.incompleteTicksInARow <= MAX_INCOMPLETE_RETICKS)
+                    // skipped Tangles have to be processed even if no further markers arrive, but not at any cost
+                    scheduleTick(actor, state, minInterval << (state.incompleteTicksInARow - 1));
+                state.requestedWhileRunning = false;
+            }
+        }
+    }
+
+    private synchronized void recordTick(long duration, boolean complete) {
+        ticks++;
+        if(!complete)
+            incompleteTicks++;
+        totalTickDuration += duration;
+        maxTickDuration = Math.max(maxTickDuration, duration);
+        lastTickDuration = duration;
+    }
+
+    private synchronized void recordFailedTick() {
+        failedTicks++;
+    }
+
+    /**
+     * @return Amount of ticks waiting to be executed, either for their delay to pass or for a free worker.
+     * */
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Amount of ticks currently being executed.
+     * */
+    int getActiveTicks() {
+        return executor.getActiveCount();
+    }
+
+    synchronized long getTicks() {
+        return ticks;
+    }
+
+    synchronized long getFailedTicks() {
+        return failedTicks;
+    }
+
+    /**
+     * @return Amount of ticks which did not complete within their time budget.
+     * */
+    synchronized long getIncompleteTicks() {
+        return incompleteTicks;
+    }
+
+    synchronized double getAverageTickDuration() {
+        return ticks == 0 ? 0 : (double) totalTickDuration / ticks;
+    }
+
+    synchronized long getMaxTickDuration() {
+        return maxTickDuration;
+    }
+
+    synchronized long getLastTickDuration() {
+        return lastTickDuration;
+    }
+
+    private static class ActorState {
+        private boolean scheduled = false;
+        private boolean running = false;
+        private boolean requestedWhileRunning = false;
+        private int incompleteTicksInARow = 0;
+        private long lastStart = 0;
+    }
+}
@@ -16,19 +16,54 @@ public class AutonomousEconomicActor extends ControlledEconomicActor {
     private static final NumberFormat format = new DecimalFormat("#0.000");
 
     private final Ixi ixi;
-    private final LedgerValidator ledgerValidator;
-    private final Map<String, Double> publishedConfidenceByMarkedTangle = new HashMap<>();
-    private Map.Entry<String, Double> mostConfident = null;
+    private final LedgerView ledger;
+    private final Map<TangleId, Double> publishedConfidenceByMarkedTangle = new HashMap<>();
+    private Map.Entry<TangleId, Double> mostConfident = null;
     private final EconomicCluster economicCluster;
-    private final Set<String> validTangles = new HashSet<>();
-    private final Set<String> invalidTangles = new HashSet<>();
+    private final Set<TangleId> validTangles = new HashSet<>();
+    private final Set<TangleId> invalidTangles = new HashSet<>();
+    private final Map<String, Set<TangleId>> evaluatedTanglesBySpentAddress = new HashMap<>();
+    private final Set<String> changedAddresses = new HashSet<>();
+    private final Set<String> negativeConfirmedBalances = new HashSet<>();
+    private final Map<TangleId, Hash> missingHashByIncompleteTangle = new HashMap<>();
+    private final Map<Hash, Set<TangleId>> incompleteTanglesByMissingHash = new HashMap<>();
+    private final Set<TangleId> pendingTangles = new LinkedHashSet<>();
+    private final Map<TangleId, Set<TangleId>> conflictsByTangle = new LinkedHashMap<>();
+    private final Map<TangleId, Double> confidenceByTangle = new HashMap<>();
+    private final Map<TangleId, Set<String>> spentAddressesByTangle = new HashMap<>();
+    private final Map<String, Set<TangleId>> conflictCandidatesBySpentAddress = new HashMap<>();
+    private final CompatibilityCache compatibilityCache = new CompatibilityCache(CompatibilityCache.DEFAULT_CAPACITY);
+    private boolean incremental = false;
+    private long lastClusterVersion = -1;
     private double aggressivity = 1.1, conservativity = 20.0;
+    private int maxExactTangles = ConfidenceCalculator.DEFAULT_MAX_EXACT_TANGLES;
+    private long confidenceTimeBudget = ConfidenceCalculator.DEFAULT_TIME_BUDGET;
+    private double confidenceErrorBound = ConfidenceCalculator.DEFAULT_ERROR_BOUND;
 
+    /**
+     * Creates a ledger validator of its own, which listens to the gossip of the Ixi from now on. Use
+     * {@link #AutonomousEconomicActor(Ixi, EconomicCluster, LedgerValidator, SerializableAutoIndexableMerkleTree)} to
+     * share a validator and control how long it listens.
+     * */
     public AutonomousEconomicActor(Ixi ixi, EconomicCluster economicCluster, Map<String, BigInteger> initialBalances, SerializableAutoIndexableMerkleTree merkleTree) {
+        this(ixi, economicCluster, createLedgerValidator(ixi, initialBalances), merkleTree);
+    }
+
+    private static LedgerValidator createLedgerValidator(Ixi ixi, Map<String, BigInteger> initialBalances) {
+        LedgerValidator ledgerValidator = new LedgerValidator(ixi, initialBalances);
+        ixi.addListener(ledgerValidator);
+        return ledgerValidator;
+    }
+
+    /**
+     * @param ledgerValidator Validator which may be shared with other actors. Changes of its initial balances apply to
+     *                        this actor as well, while {@link #changeInitialBalance(String, BigInteger)} only affects this actor.
+     * */
+    public AutonomousEconomicActor(Ixi ixi, EconomicCluster economicCluster, LedgerValidator ledgerValidator, SerializableAutoIndexableMerkleTree merkleTree) {
         super(merkleTree);
         this.ixi = ixi;
         this.economicCluster = economicCluster;
-        this.ledgerValidator = new LedgerValidator(ixi, initialBalances);
+        this.ledger = new LedgerView(ledgerValidator);
     }
 
     public void setAggressivity(double aggressivity) {
@@ -39,71 +74,424 @@ public class AutonomousEconomicActor extends ControlledEconomicActor {
         this.conservativity = conservativity;
     }
 
+    /**
+     * @see ConfidenceCalculator#setMaxExactTangles(int)
+     * */
+    public void setMaxExactTangles(int maxExactTangles) {
+        this.maxExactTangles = maxExactTangles;
+    }
+
+    /**
+     * @see ConfidenceCalculator#setTimeBudget(long)
+     * */
+    public void setConfidenceTimeBudget(long confidenceTimeBudget) {
+        this.confidenceTimeBudget = confidenceTimeBudget;
+    }
+
+    /**
+     * @see ConfidenceCalculator#setErrorBound(double)
+     * */
+    public void setConfidenceErrorBound(double confidenceErrorBound) {
+        this.confidenceErrorBound = confidenceErrorBound;
+    }
+
+    /**
+     * @param incremental Whether ticks shall only recalculate the conflict components affected by changes in the cluster
+     *                    since the last tick. Confidences of all other Tangles are reused, even though the amount of Tangles
+     *                    (which slightly influences the initial probabilities) might have changed in the meantime.
+     * */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Changes the initial balance for this actor only, even if its ledger validator is shared. Only Tangles spending from
+     * that address are re-evaluated, which happens lazily in the next tick.
+     * */
     public void changeInitialBalance(String address, BigInteger toAdd) {
-        ledgerValidator.changeInitialBalance(address, toAdd);
+        ledger.changeInitialBalance(address, toAdd);
+        changedAddresses.add(address);
     }
 
-    public void tick() {
-        tick(Collections.emptySet());
+    public TickResult tick() {
+        return tick(Collections.<String>emptySet());
     }
-    public void tick(Collection<String> newTangles) {
-        // TODO do not consider all which is too computationally expensive
-        List<String> tangles = new LinkedList<>(economicCluster.getAllTangles());
-        tangles.addAll(newTangles);
-        removeInvalidTangles(tangles);
-        Map<String, Double> newConfidenceByTangle = new HashMap<>();
-        if(tangles.size() == 0)
-            return;
-        ConfidenceCalculator confidenceCalculator = createConfidenceCalculator(tangles);
-        for(String tangle : tangles) {
-            double calculatedConfidence = confidenceCalculator.confidenceOf(tangle);
-            newConfidenceByTangle.put(tangle, calculatedConfidence);
+
+    public TickResult tick(Collection<String> newTangles) {
+        return tick(newTangles, Long.MAX_VALUE);
+    }
+
+    /**
+     * Calculates the confidence of all marked Tangles and issues markers to publish changed confidences. The tick tries
+     * to stay within the time budget: Tangles which cannot be validated, checked for conflicts or published in time and
+     * Tangles whose confidence has not converged in time are skipped and considered first in the next tick.
+     *
+     * In {@link #setIncremental(boolean) incremental} mode, only Tangles affected by changes in the cluster since the last
+     * tick are considered. The conflicts found in previous ticks are kept, so only the conflict components of these Tangles
+     * have to be recalculated.
+     *
+     * Tangle IDs are converted to {@link TangleId}s once when they enter the tick, all state kept across ticks is keyed by
+     * them.
+     * @param newTangles Tangles to consider in addition to those marked in the cluster.
+     * @param budget Time budget in milliseconds. {@link Long#MAX_VALUE} if unlimited.
+     * @return Summary of what was done and what was skipped.
+     * */
+    public TickResult tick(Collection<String> newTangles, long budget) {
+        long start = System.currentTimeMillis();
+        long deadline = budget == Long.MAX_VALUE ? Long.MAX_VALUE : start + budget;
+        TickResult result = new TickResult(budget);
+
+        Set<TangleId> newTangleIds = new LinkedHashSet<>();
+        for(String tangle : newTangles)
+            newTangleIds.add(TangleId.of(tangle));
+
+        long clusterVersion = economicCluster.getVersion();
+        boolean incrementally = incremental && lastClusterVersion >= 0 && !economicCluster.hasGlobalChangeSince(lastClusterVersion);
+        // only changed Tangles can have become confirmed since the last tick
+        Set<String> changedTangles = incrementally ? economicCluster.getTanglesChangedSince(lastClusterVersion) : economicCluster.getAllTangles();
+        Set<TangleId> changedTangleIds = new LinkedHashSet<>();
+        // a changed Tangle which is no longer marked was released by all actors
+        Set<TangleId> departedTangles = new HashSet<>();
+        for(String tangle : changedTangles) {
+            TangleId tangleId = TangleId.of(tangle);
+            changedTangleIds.add(tangleId);
+            if(incrementally && !newTangleIds.contains(tangleId) && !economicCluster.isMarked(tangle))
+                departedTangles.add(tangleId);
+        }
+        advanceConfirmedFrontier(changedTangleIds);
+        collectLedgerChanges();
+        Set<TangleId> reevaluatedTangles = applyBalanceChanges();
+        if(reevaluatedTangles == null)
+            incrementally = false;
+
+        Set<TangleId> candidates = new LinkedHashSet<>(pendingTangles);
+        candidates.addAll(newTangleIds);
+        if(reevaluatedTangles != null)
+            candidates.addAll(reevaluatedTangles);
+        candidates.addAll(collectCompletedTangles());
+        pendingTangles.clear();
+        if(incrementally) {
+            for(TangleId tangle : departedTangles)
+                candidates.addAll(forgetTangle(tangle));
+            candidates.addAll(economicCluster.getTanglesAffectedSince(lastClusterVersion, conflictsByTangle.keySet()));
+            candidates.removeAll(departedTangles);
+        } else {
+            candidates.addAll(changedTangleIds);
+            for(TangleId tangle : new ArrayList<>(spentAddressesByTangle.keySet()))
+                if(!candidates.contains(tangle))
+                    forgetTangle(tangle);
+            conflictsByTangle.clear();
+            conflictCandidatesBySpentAddress.clear();
+            confidenceByTangle.clear();
+        }
+        lastClusterVersion = clusterVersion;
+
+        List<TangleId> tangles = new ArrayList<>(candidates);
+        removeInvalidTangles(tangles, deadline, result);
+        findConflicts(tangles, deadline, result);
+        // conflicts with Tangles which could not be admitted in time are unknown, so confidences might be too high
+        Set<String> addressesSpentBySkippedTangles = spentAddressesOfTanglesSkippedAt(TickResult.Skip.CONFLICT_DETECTION, result);
+        if(tangles.size() > 0)
+            recalculateConfidences(tangles, deadline, result);
+        publishConfidences(deadline, addressesSpentBySkippedTangles, result);
+
+        pendingTangles.addAll(result.getSkippedTangles().keySet());
+        result.finish(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Collapses the references of all Tangles which are confirmed in the cluster into the confirmed ledger state, so that
+     * validation stops at this frontier. The {@link LedgerValidator#setConfirmationThreshold(double) threshold} is the
+     * one of the validator, since its confirmed ledger state is shared with all other actors using it.
+     * */
+    private void advanceConfirmedFrontier(Collection<TangleId> tangles) {
+        double confirmationThreshold = ledger.getValidator().getConfirmationThreshold();
+        for(TangleId tangle : tangles) {
+            for(Hash referenceHash : new Hash[] {tangle.getReference1(), tangle.getReference2()}) {
+                String reference = referenceHash.toString();
+                if(ledger.isConfirmed(reference) || economicCluster.determineApprovalConfidence(reference) < confirmationThreshold)
+                    continue;
+                try {
+                    ledger.confirm(reference);
+                } catch (LedgerValidator.IncompleteTangleException e) {
+                    // will be retried once the Tangle changes again
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the addresses whose balances changed in the (possibly shared) ledger validator since the last tick, e.g.
+     * because transactions were confirmed or initial balances were changed.
+     * */
+    private void collectLedgerChanges() {
+        changedAddresses.addAll(ledger.pollChangedAddresses());
+    }
+
+    /**
+     * Invalidates everything derived from the balances of the changed addresses. Since a valid Tangle can only become
+     * invalid (and vice versa) if it spends from such an address, only these Tangles are re-evaluated. They are removed
+     * from the conflict relation together with their conflicts, so that all of them are considered again.
+     * @return The Tangles to re-evaluate or {@code null} if all Tangles have to be re-evaluated, which is the case if a
+     *         confirmed balance becomes negative or non-negative (see {@link LedgerValidator#noNegativeBalanceInTangle(List, Map)}).
+     * */
+    private Set<TangleId> applyBalanceChanges() {
+        Set<TangleId> affectedTangleIds = new HashSet<>();
+        boolean negativeBalancesChanged = false;
+        for(String address : changedAddresses) {
+            compatibilityCache.invalidate(address);
+            boolean negative = ledger.isConfirmedBalanceNegative(address);
+            if(negative ? negativeConfirmedBalances.add(address) : negativeConfirmedBalances.remove(address))
+                negativeBalancesChanged = true;
+            Set<TangleId> spendingTangles = evaluatedTanglesBySpentAddress.remove(address);
+            if(spendingTangles != null)
+                affectedTangleIds.addAll(spendingTangles);
+        }
+        changedAddresses.clear();
+
+        if(negativeBalancesChanged) {
+            validTangles.clear();
+            invalidTangles.clear();
+            evaluatedTanglesBySpentAddress.clear();
+            return null;
         }
 
+        for(TangleId tangleId : affectedTangleIds) {
+            validTangles.remove(tangleId);
+            invalidTangles.remove(tangleId);
+        }
+        Set<TangleId> reevaluatedTangles = new HashSet<>(affectedTangleIds);
+        for(TangleId tangle : affectedTangleIds) {
+            Set<TangleId> conflicts = conflictsByTangle.remove(tangle);
+            if(conflicts == null)
+                continue;
+            confidenceByTangle.remove(tangle);
+            for(TangleId other : conflicts) {
+                conflictsByTangle.get(other).remove(tangle);
+                // the confidence of former conflicts changes as well
+                reevaluatedTangles.add(other);
+            }
+            Set<String> spentAddresses = spentAddressesByTangle.get(tangle);
+            if(spentAddresses != null)
+                for(String address : spentAddresses)
+                    removeFromIndex(conflictCandidatesBySpentAddress, address, tangle);
+        }
+        return reevaluatedTangles;
+    }
+
+    /**
+     * Removes everything known about a Tangle which is no longer considered, so that the caches do not keep growing while
+     * ticks are incremental.
+     * @return The Tangles which conflicted with the removed one. Their confidences have to be recalculated.
+     * */
+    private Set<TangleId> forgetTangle(TangleId tangle) {
+        validTangles.remove(tangle);
+        invalidTangles.remove(tangle);
+        Hash missingHash = missingHashByIncompleteTangle.remove(tangle);
+        if(missingHash != null)
+            removeFromIndex(incompleteTanglesByMissingHash, missingHash, tangle);
+        Set<String> spentAddresses = spentAddressesByTangle.remove(tangle);
+        if(spentAddresses != null) {
+            for(String address : spentAddresses) {
+                removeFromIndex(evaluatedTanglesBySpentAddress, address, tangle);
+                removeFromIndex(conflictCandidatesBySpentAddress, address, tangle);
+            }
+        }
+        confidenceByTangle.remove(tangle);
+        Set<TangleId> conflicts = conflictsByTangle.remove(tangle);
+        if(conflicts == null)
+            return Collections.emptySet();
+        for(TangleId other : conflicts)
+            conflictsByTangle.get(other).remove(tangle);
+        return conflicts;
+    }
+
+    private static <K, V> void removeFromIndex(Map<K, Set<V>> index, K key, V value) {
+        Set<V> values = index.get(key);
+        if(values != null && values.remove(value) && values.isEmpty())
+            index.remove(key);
+    }
+
+    /**
+     * Incomplete Tangles are not validated again before the transaction they were missing has been received.
+     * @return All previously incomplete Tangles whose missing transaction was received since the last tick.
+     * */
+    private Set<TangleId> collectCompletedTangles() {
+        Set<Hash> resolvedHashes = ledger.pollResolvedDependencies();
+        Set<TangleId> completedTangles = new HashSet<>();
+        for(Hash resolvedHash : resolvedHashes) {
+            Set<TangleId> waitingTangles = incompleteTanglesByMissingHash.remove(resolvedHash);
+            if(waitingTangles == null)
+                continue;
+            for(TangleId tangleId : waitingTangles) {
+                missingHashByIncompleteTangle.remove(tangleId);
+                completedTangles.add(tangleId);
+            }
+        }
+        return completedTangles;
+    }
+
+    /**
+     * Recalculates the confidences of all Tangles in the conflict components of the specified Tangles.
+     * */
+    private void recalculateConfidences(List<TangleId> tangles, long deadline, TickResult result) {
+        ConflictGraph<TangleId> conflicts = new ConflictGraph<>(findConflictComponentsOf(tangles));
+        for(int i = 0; i < conflicts.size(); i++) {
+            for(TangleId other : conflictsByTangle.get(conflicts.getTangle(i))) {
+                int j = conflicts.indexOf(other);
+                if(j > i)
+                    conflicts.addConflict(i, j);
+            }
+        }
+
+        long remainingTime = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+        ConfidenceCalculator confidenceCalculator = createConfidenceCalculator(conflicts, conflictsByTangle.size(), Math.min(confidenceTimeBudget, remainingTime));
+
+        for(int i = 0; i < conflicts.size(); i++) {
+            TangleId tangle = conflicts.getTangle(i);
+            result.evaluated(tangle);
+            if(confidenceCalculator.errorAt(i) > confidenceErrorBound)
+                result.skipped(tangle, TickResult.Skip.NOT_CONVERGED);
+            else
+                confidenceByTangle.put(tangle, confidenceCalculator.confidenceAt(i));
+        }
+    }
+
+    private List<TangleId> findConflictComponentsOf(List<TangleId> tangles) {
+        Set<TangleId> component = new LinkedHashSet<>(tangles);
+        LinkedList<TangleId> toTraverse = new LinkedList<>(tangles);
+        while (toTraverse.size() > 0)
+            for(TangleId other : conflictsByTangle.get(toTraverse.poll()))
+                if(component.add(other))
+                    toTraverse.add(other);
+        return new ArrayList<>(component);
+    }
+
+    /**
+     * @return All addresses spent from by the Tangles which were skipped at the specified stage.
+     * */
+    private Set<String> spentAddressesOfTanglesSkippedAt(TickResult.Skip stage, TickResult result) {
+        Set<String> spentAddresses = new HashSet<>();
+        for(Map.Entry<TangleId, TickResult.Skip> skipped : result.getSkippedTangles().entrySet())
+            if(skipped.getValue() == stage)
+                spentAddresses.addAll(spentAddressesOf(skipped.getKey()));
+        return spentAddresses;
+    }
+
+    /**
+     * @param withheldAddresses Tangles spending from any of these addresses are not published but skipped, since they
+     *                          might conflict with Tangles which were not admitted to the conflict relation in time.
+     * */
+    private void publishConfidences(long deadline, Set<String> withheldAddresses, TickResult result) {
+        Map.Entry<TangleId, Double> previouslyMostConfident = mostConfident;
         mostConfident = null;
-        for(Map.Entry<String, Double> entry : newConfidenceByTangle.entrySet()) {
-            adjustConfidence(entry.getKey(), entry.getValue());
+        for(Map.Entry<TangleId, Double> entry : confidenceByTangle.entrySet()) {
+            if(System.currentTimeMillis() > deadline || !Collections.disjoint(withheldAddresses, spentAddressesOf(entry.getKey())))
+                result.skipped(entry.getKey(), TickResult.Skip.PUBLICATION);
+            else if(adjustConfidence(entry.getKey(), entry.getValue()))
+                result.published(entry.getKey());
             if(mostConfident == null || entry.getValue() > mostConfident.getValue())
-                mostConfident = entry;
+                mostConfident = new AbstractMap.SimpleImmutableEntry<>(entry);
         }
+
+        // the most confident Tangle is favored when guessing initial probabilities, so both components have to be recalculated
+        TangleId previousKey = previouslyMostConfident == null ? null : previouslyMostConfident.getKey();
+        TangleId currentKey = mostConfident == null ? null : mostConfident.getKey();
+        if(previousKey != null && !previousKey.equals(currentKey))
+            pendingTangles.add(previousKey);
+        if(currentKey != null && !currentKey.equals(previousKey))
+            pendingTangles.add(currentKey);
     }
 
-    protected void removeInvalidTangles(List<String> tangles) {
+    protected void removeInvalidTangles(List<TangleId> tangles) {
+        removeInvalidTangles(tangles, Long.MAX_VALUE, new TickResult(Long.MAX_VALUE));
+    }
+
+    /**
+     * Removes all invalid and incomplete Tangles. After the deadline, only Tangles whose validity is already known are
+     * checked, all others are removed as well and reported as skipped.
+     * */
+    protected void removeInvalidTangles(List<TangleId> tangles, long deadline, TickResult result) {
         for(int i = 0; i < tangles.size(); i++) {
-            String tangle = tangles.get(i);
-            if(tangle.length() != Transaction.Field.BRANCH_HASH.tryteLength + Transaction.Field.TRUNK_HASH.tryteLength)
-                throw new IllegalArgumentException("Not a tangle, invalid length: " + tangle);
-            if(!isTangleValid(tangle))
+            TangleId tangle = tangles.get(i);
+            boolean isValidityKnown = validTangles.contains(tangle) || invalidTangles.contains(tangle) || missingHashByIncompleteTangle.containsKey(tangle);
+            if(!isValidityKnown && System.currentTimeMillis() > deadline) {
+                result.skipped(tangle, TickResult.Skip.VALIDATION);
+                tangles.remove(i--);
+            } else if(!isTangleValid(tangle)) {
                 tangles.remove(i--);
+            }
         }
     }
 
+    /**
+     * @return Whether the Tangle is valid. Incomplete Tangles are not considered valid until the missing transaction is
+     *         received, but unlike invalid Tangles they are validated again afterwards.
+     * */
     public boolean isTangleValid(String tangle) {
-        if(validTangles.contains(tangle))
+        return isTangleValid(TangleId.of(tangle));
+    }
+
+    private boolean isTangleValid(TangleId tangleId) {
+        if(validTangles.contains(tangleId))
             return true;
-        if(invalidTangles.contains(tangle))
+        if(invalidTangles.contains(tangleId) || missingHashByIncompleteTangle.containsKey(tangleId))
+            return false;
+        boolean isValid;
+        try {
+            isValid = ledger.areTanglesCompatible(tangleId.getReference1().toString(), tangleId.getReference2().toString());
+        } catch (LedgerValidator.IncompleteTangleException incompleteTangleException) {
+            Hash missingHash = Hash.of(incompleteTangleException.unavailableTransactionHash);
+            missingHashByIncompleteTangle.put(tangleId, missingHash);
+            if(!incompleteTanglesByMissingHash.containsKey(missingHash))
+                incompleteTanglesByMissingHash.put(missingHash, new HashSet<TangleId>());
+            incompleteTanglesByMissingHash.get(missingHash).add(tangleId);
             return false;
-        String ref1 = tangle.substring(0, 81);
-        String ref2 = tangle.substring(81);
-        boolean isValid = ledgerValidator.areTanglesCompatible(ref1, ref2);
-        (isValid ? validTangles : invalidTangles).add(tangle);
+        }
+        (isValid ? validTangles : invalidTangles).add(tangleId);
+        indexBySpentAddresses(tangleId);
         return isValid;
     }
 
-    protected ConfidenceCalculator createConfidenceCalculator(List<String> tangles) {
-        assert tangles.size() > 0;
-        Set<ConfidenceCalculator.Conflict> conflicts = findAllConflicts(tangles);
-        double[] initialProbabilities = new double[tangles.size()];
-        for(int i = 0; i < tangles.size(); i++) {
-            String tangle = tangles.get(i);
-            initialProbabilities[i] = guessApprovalConfidence(tangle, tangles.size());
+    /**
+     * Registers the Tangle with all addresses it spends from, since its validity depends on their balances.
+     * */
+    private void indexBySpentAddresses(TangleId tangleId) {
+        Set<String> spentAddresses;
+        try {
+            spentAddresses = spentAddressesOf(tangleId);
+        } catch (LedgerValidator.IncompleteTangleException incompleteTangleException) {
+            // only possible if validation failed before reaching the missing transaction, i.e. independent of balances
+            return;
+        }
+        for(String address : spentAddresses) {
+            if(!evaluatedTanglesBySpentAddress.containsKey(address))
+                evaluatedTanglesBySpentAddress.put(address, new HashSet<TangleId>());
+            evaluatedTanglesBySpentAddress.get(address).add(tangleId);
         }
-        return new ConfidenceCalculator(tangles, conflicts, initialProbabilities);
     }
 
-    protected double guessApprovalConfidence(String tangle, int amountOfTangles) {
-        double confidenceRef1 = guessTransactionApprovalConfidence(tangle.substring(0, 81), amountOfTangles);
-        double confidenceRef2 = guessTransactionApprovalConfidence(tangle.substring(81), amountOfTangles);
+    /**
+     * @param conflicts The conflict relation among all Tangles to calculate.
+     * @param amountOfTangles The amount of all Tangles considered, including those not part of the conflict relation.
+     * @param timeBudget Time budget in milliseconds for the calculation.
+     * */
+    protected ConfidenceCalculator createConfidenceCalculator(ConflictGraph<TangleId> conflicts, int amountOfTangles, long timeBudget) {
+        assert conflicts.size() > 0;
+        double[] initialProbabilities = new double[conflicts.size()];
+        for(int i = 0; i < conflicts.size(); i++)
+            initialProbabilities[i] = guessApprovalConfidence(conflicts.getTangle(i), amountOfTangles);
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(conflicts, initialProbabilities);
+        confidenceCalculator.setMaxExactTangles(maxExactTangles);
+        confidenceCalculator.setTimeBudget(timeBudget);
+        confidenceCalculator.setErrorBound(confidenceErrorBound);
+        return confidenceCalculator;
+    }
+
+    protected double guessApprovalConfidence(TangleId tangle, int amountOfTangles) {
+        double confidenceRef1 = guessTransactionApprovalConfidence(tangle.getReference1().toString(), amountOfTangles);
+        double confidenceRef2 = guessTransactionApprovalConfidence(tangle.getReference2().toString(), amountOfTangles);
         return (mostConfident != null && mostConfident.getKey().equals(tangle) ? 1+aggressivity : 1) * Math.min(confidenceRef1, confidenceRef2);
     }
 
@@ -112,34 +500,108 @@ public class AutonomousEconomicActor extends ControlledEconomicActor {
         return turnout * economicCluster.determineApprovalConfidence(transaction) + (1-turnout) / amountOfTangles;
     }
 
-    protected Set<ConfidenceCalculator.Conflict> findAllConflicts(List<String> tangles) {
-        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+    /**
+     * Checks each Tangle which is not yet part of the known conflict relation against all Tangles which are. Tangles are
+     * admitted one after another, so the conflicts among admitted Tangles are always complete, even if the deadline stops
+     * the process early. Tangles which could not be admitted in time are removed and reported as skipped.
+     *
+     * Two valid Tangles can only conflict if both spend from the same address: otherwise the merged Tangle adds only
+     * deposits to the balances of each Tangle. Only admitted Tangles sharing a spent address are therefore checked.
+     * @param tangles Distinct valid Tangles.
+     * @param deadline Point in time (in milliseconds since epoch) after which no further Tangles are admitted.
+     * */
+    protected void findConflicts(List<TangleId> tangles, long deadline, TickResult result) {
         for(int i = 0; i < tangles.size(); i++) {
-            String tangleI = tangles.get(i);
-            for(int j = i+1; j < tangles.size(); j++) {
-                String tangleJ = tangles.get(j);
-                if(!ledgerValidator.areTanglesCompatible(tangleI.substring(0, 81), tangleI.substring(81), tangleJ.substring(0, 81), tangleJ.substring(81)))
-                    conflicts.add(new ConfidenceCalculator.Conflict(tangleI, tangleJ));
+            TangleId tangle = tangles.get(i);
+            if(conflictsByTangle.containsKey(tangle))
+                continue;
+            Set<TangleId> conflicts = new HashSet<>();
+            boolean admitted = System.currentTimeMillis() <= deadline;
+            if(admitted) {
+                for(TangleId other : findConflictCandidates(tangle)) {
+                    if(System.currentTimeMillis() > deadline) {
+                        admitted = false;
+                        break;
+                    }
+                    if(!areTanglesCompatible(tangle, other))
+                        conflicts.add(other);
+                }
+            }
+
+            if(admitted) {
+                for(TangleId other : conflicts)
+                    conflictsByTangle.get(other).add(tangle);
+                conflictsByTangle.put(tangle, conflicts);
+                for(String address : spentAddressesOf(tangle)) {
+                    if(!conflictCandidatesBySpentAddress.containsKey(address))
+                        conflictCandidatesBySpentAddress.put(address, new HashSet<TangleId>());
+                    conflictCandidatesBySpentAddress.get(address).add(tangle);
+                }
+            } else {
+                result.skipped(tangle, TickResult.Skip.CONFLICT_DETECTION);
+                tangles.remove(i--);
             }
         }
-        return conflicts;
     }
 
-    protected void adjustConfidence(String tangle, double newConfidence) {
+    /**
+     * @return All admitted Tangles which spend from at least one address the Tangle spends from as well.
+     * */
+    private Set<TangleId> findConflictCandidates(TangleId tangle) {
+        Set<TangleId> candidates = new HashSet<>();
+        for(String address : spentAddressesOf(tangle)) {
+            Set<TangleId> spendingTangles = conflictCandidatesBySpentAddress.get(address);
+            if(spendingTangles != null)
+                candidates.addAll(spendingTangles);
+        }
+        return candidates;
+    }
+
+    private Set<String> spentAddressesOf(TangleId tangle) {
+        Set<String> spentAddresses = spentAddressesByTangle.get(tangle);
+        if(spentAddresses == null) {
+            spentAddresses = ledger.findSpentAddresses(tangle.getReference1().toString(), tangle.getReference2().toString());
+            spentAddressesByTangle.put(tangle, spentAddresses);
+        }
+        return spentAddresses;
+    }
+
+    private boolean areTanglesCompatible(TangleId tangleA, TangleId tangleB) {
+        Boolean compatible = compatibilityCache.get(tangleA, tangleB);
+        if(compatible == null) {
+            if(!compatibilityCache.hasAddressesOf(tangleA))
+                compatibilityCache.putAddressesOf(tangleA, spentAddressesOf(tangleA));
+            if(!compatibilityCache.hasAddressesOf(tangleB))
+                compatibilityCache.putAddressesOf(tangleB, spentAddressesOf(tangleB));
+            compatible = ledger.areTanglesCompatible(tangleA.getReference1().toString(), tangleA.getReference2().toString(),
+                    tangleB.getReference1().toString(), tangleB.getReference2().toString());
+            compatibilityCache.put(tangleA, tangleB, compatible);
+        }
+        return compatible;
+    }
+
+    /**
+     * @return Whether a new marker was issued.
+     * */
+    protected boolean adjustConfidence(TangleId tangle, double newConfidence) {
         double oldConfidence = publishedConfidenceByMarkedTangle.getOrDefault(tangle, new Double(0));
         boolean shouldIssueNewMarker = !publishedConfidenceByMarkedTangle.containsKey(tangle) || shouldIssueMarkerToUpdateConfidence(oldConfidence, newConfidence);
         if(shouldIssueNewMarker) {
             double conservativeConfidence = oldConfidence + (newConfidence - oldConfidence) / conservativity;
-            System.err.println("adjusting confidence for " + tangle.substring(0, 10) + "... towards " + format.format(newConfidence) + ": "+format.format(oldConfidence)+" -> " + format.format(conservativeConfidence));
-            Bundle marker = buildMarker(tangle.substring(0, 81), tangle.substring(81), conservativeConfidence);
+            String trunk = tangle.getReference1().toString(), branch = tangle.getReference2().toString();
+            System.err.println("adjusting confidence for " + trunk.substring(0, 10) + "... towards " + format.format(newConfidence) + ": "+format.format(oldConfidence)+" -> " + format.format(conservativeConfidence));
+            publishedConfidenceByMarkedTangle.put(tangle, conservativeConfidence);
+            // skips the override, which would have to convert the Tangle ID again
+            Bundle marker = super.buildMarker(trunk, branch, conservativeConfidence);
             for (Transaction t : marker.getTransactions())
                 ixi.submit(t);
         }
+        return shouldIssueNewMarker;
     }
 
     @Override
     public Bundle buildMarker(String trunk, String branch, double confidence) {
-        publishedConfidenceByMarkedTangle.put(tangleID(trunk, branch), confidence);
+        publishedConfidenceByMarkedTangle.put(TangleId.of(tangleID(trunk, branch)), confidence);
         return super.buildMarker(trunk, branch, confidence);
     }
 
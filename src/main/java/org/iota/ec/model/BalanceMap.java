@@ -0,0 +1,195 @@
+package org.iota.ec.model;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps addresses to balances. Since the total supply fits into a {@code long}, balances are stored as primitives in an
+ * open-addressing table (linear probing), which avoids boxing and allocating a {@link BigInteger} for every addition.
+ * Balances only fall back to {@link BigInteger} once they overflow. Entries cannot be removed, a balance of zero is
+ * simply kept.
+ * */
+class BalanceMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE), MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private String[] addresses;
+    private long[] balances;
+    // balances which do not fit into a long anymore, null until the first overflow
+    private BigInteger[] overflowed;
+    private int size;
+
+    BalanceMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    BalanceMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        addresses = new String[capacity];
+        balances = new long[capacity];
+    }
+
+    BalanceMap(BalanceMap toCopy) {
+        addresses = toCopy.addresses.clone();
+        balances = toCopy.balances.clone();
+        overflowed = toCopy.overflowed == null ? null : toCopy.overflowed.clone();
+        size = toCopy.size;
+    }
+
+    void add(String address, BigInteger value) {
+        if(fitsIntoLong(value))
+            add(address, value.longValue());
+        else
+            addOverflowed(slotOf(address), value);
+    }
+
+    void add(String address, long value) {
+        int slot = slotOf(address);
+        if(overflowed != null && overflowed[slot] != null) {
+            addOverflowed(slot, BigInteger.valueOf(value));
+            return;
+        }
+        long sum = balances[slot] + value;
+        // overflow if both summands have the same sign which differs from the sign of the sum
+        if(((balances[slot] ^ sum) & (value ^ sum)) < 0)
+            addOverflowed(slot, BigInteger.valueOf(value));
+        else
+            balances[slot] = sum;
+    }
+
+    void addAll(BalanceMap other) {
+        for(int slot = 0; slot < other.capacity(); slot++) {
+            String address = other.addressAt(slot);
+            if(address == null)
+                continue;
+            if(other.overflowsAt(slot))
+                add(address, other.overflowed[slot]);
+            else
+                add(address, other.balances[slot]);
+        }
+    }
+
+    BigInteger get(String address) {
+        int slot = find(address);
+        return slot < 0 ? BigInteger.ZERO : valueAt(slot);
+    }
+
+    /**
+     * @return The slot of the address or {@code -1} if the address has no entry.
+     * */
+    int find(String address) {
+        int mask = addresses.length - 1;
+        for(int slot = spread(address.hashCode()) & mask; addresses[slot] != null; slot = (slot + 1) & mask)
+            if(addresses[slot].equals(address))
+                return slot;
+        return -1;
+    }
+
+    /**
+     * Slots are numbered from {@code 0} to {@link #capacity()}{@code -1}. Slots without entry are empty.
+     * */
+    int capacity() {
+        return addresses.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The address stored in that slot or {@code null} if the slot is empty.
+     * */
+    String addressAt(int slot) {
+        return addresses[slot];
+    }
+
+    /**
+     * @return Whether the balance in that slot does not fit into a {@code long}, so that {@link #longAt(int)} cannot be used.
+     * */
+    boolean overflowsAt(int slot) {
+        return overflowed != null && overflowed[slot] != null;
+    }
+
+    long longAt(int slot) {
+        assert !overflowsAt(slot);
+        return balances[slot];
+    }
+
+    BigInteger valueAt(int slot) {
+        return overflowsAt(slot) ? overflowed[slot] : BigInteger.valueOf(balances[slot]);
+    }
+
+    Map<String, BigInteger> toMap() {
+        Map<String, BigInteger> map = new HashMap<>();
+        for(int slot = 0; slot < addresses.length; slot++)
+            if(addresses[slot] != null)
+                map.put(addresses[slot], valueAt(slot));
+        return map;
+    }
+
+    static boolean fitsIntoLong(BigInteger value) {
+        return value.bitLength() < Long.SIZE;
+    }
+
+    private void addOverflowed(int slot, BigInteger value) {
+        if(overflowed == null)
+            overflowed = new BigInteger[addresses.length];
+        BigInteger sum = valueAt(slot).add(value);
+        if(sum.compareTo(MIN_LONG) >= 0 && sum.compareTo(MAX_LONG) <= 0) {
+            // back in range
+            overflowed[slot] = null;
+            balances[slot] = sum.longValue();
+        } else {
+            overflowed[slot] = sum;
+        }
+    }
+
+    /**
+     * @return The slot of the address. An entry with a balance of zero is created if the address has no entry yet.
+     * */
+    private int slotOf(String address) {
+        int slot = find(address);
+        if(slot >= 0)
+            return slot;
+        if((size + 1) * 2 > addresses.length)
+            resize(addresses.length * 2);
+        int mask = addresses.length - 1;
+        slot = spread(address.hashCode()) & mask;
+        while (addresses[slot] != null)
+            slot = (slot + 1) & mask;
+        addresses[slot] = address;
+        size++;
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        String[] oldAddresses = addresses;
+        long[] oldBalances = balances;
+        BigInteger[] oldOverflowed = overflowed;
+        addresses = new String[capacity];
+        balances = new long[capacity];
+        overflowed = oldOverflowed == null ? null : new BigInteger[capacity];
+
+        int mask = capacity - 1;
+        for(int oldSlot = 0; oldSlot < oldAddresses.length; oldSlot++) {
+            if(oldAddresses[oldSlot] == null)
+                continue;
+            int slot = spread(oldAddresses[oldSlot].hashCode()) & mask;
+            while (addresses[slot] != null)
+                slot = (slot + 1) & mask;
+            addresses[slot] = oldAddresses[oldSlot];
+            balances[slot] = oldBalances[oldSlot];
+            if(oldOverflowed != null)
+                overflowed[slot] = oldOverflowed[oldSlot];
+        }
+    }
+
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,160 @@
+package org.iota.ec.model;
+
+import java.util.*;
+
+/**
+ * Remembers whether two Tangles are compatible. Since Tangles are immutable, the result of a pair can only change if the
+ * initial balance of an address spent from in the past cone of one of them changes. Each cached Tangle is therefore
+ * registered with these addresses, so that {@link #invalidate(String)} removes exactly the affected pairs. Tangles are
+ * indexed by address and pairs by Tangle, so that invalidation only visits the affected entries.
+ * The amount of pairs is bounded, the least recently used pairs are evicted first.
+ * */
+class CompatibilityCache {
+
+    static final int DEFAULT_CAPACITY = 100000;
+
+    private final Map<TanglePair, Boolean> compatibilityByPair;
+    private final Map<TangleId, Set<String>> addressesByTangle = new HashMap<>();
+    private final Map<String, Set<TangleId>> tanglesByAddress = new HashMap<>();
+    private final Map<TangleId, Set<TanglePair>> pairsByTangle = new HashMap<>();
+
+    CompatibilityCache(final int capacity) {
+        this.compatibilityByPair = new LinkedHashMap<TanglePair, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TanglePair, Boolean> eldest) {
+                if(size() <= capacity)
+                    return false;
+                release(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return Whether the Tangles are compatible or {@code null} if unknown.
+     * */
+    Boolean get(TangleId tangleA, TangleId tangleB) {
+        return compatibilityByPair.get(new TanglePair(tangleA, tangleB));
+    }
+
+    /**
+     * @return Whether the addresses of that Tangle are already known, so that it can be used in {@link #put(TangleId, TangleId, boolean)}.
+     * */
+    boolean hasAddressesOf(TangleId tangle) {
+        return addressesByTangle.containsKey(tangle);
+    }
+
+    /**
+     * @param addresses All addresses spent from in the past cone of the Tangle.
+     * */
+    void putAddressesOf(TangleId tangle, Set<String> addresses) {
+        addressesByTangle.put(tangle, addresses);
+        for(String address : addresses) {
+            Set<TangleId> tangles = tanglesByAddress.get(address);
+            if(tangles == null) {
+                tangles = new HashSet<>();
+                tanglesByAddress.put(address, tangles);
+            }
+            tangles.add(tangle);
+        }
+    }
+
+    /**
+     * Both Tangles must have been registered via {@link #putAddressesOf(TangleId, Set)} before.
+     * */
+    void put(TangleId tangleA, TangleId tangleB, boolean compatible) {
+        assert hasAddressesOf(tangleA) && hasAddressesOf(tangleB);
+        TanglePair pair = new TanglePair(tangleA, tangleB);
+        if(compatibilityByPair.containsKey(pair)) {
+            compatibilityByPair.put(pair, compatible);
+            return;
+        }
+        retain(tangleA, pair);
+        retain(tangleB, pair);
+        compatibilityByPair.put(pair, compatible);
+    }
+
+    /**
+     * Removes all pairs whose compatibility might depend on the initial balance of the address.
+     * */
+    void invalidate(String address) {
+        Set<TangleId> affected = tanglesByAddress.get(address);
+        if(affected == null)
+            return;
+        // releasing the last pair of a Tangle unregisters it from the address
+        for(TangleId tangle : new ArrayList<>(affected)) {
+            Set<TanglePair> pairs = pairsByTangle.get(tangle);
+            if(pairs == null)
+                continue;
+            for(TanglePair pair : new ArrayList<>(pairs)) {
+                compatibilityByPair.remove(pair);
+                release(pair);
+            }
+        }
+    }
+
+    int size() {
+        return compatibilityByPair.size();
+    }
+
+    private void retain(TangleId tangle, TanglePair pair) {
+        Set<TanglePair> pairs = pairsByTangle.get(tangle);
+        if(pairs == null) {
+            pairs = new HashSet<>();
+            pairsByTangle.put(tangle, pairs);
+        }
+        pairs.add(pair);
+    }
+
+    private void release(TanglePair pair) {
+        release(pair.tangleA, pair);
+        release(pair.tangleB, pair);
+    }
+
+    private void release(TangleId tangle, TanglePair pair) {
+        Set<TanglePair> pairs = pairsByTangle.get(tangle);
+        if(pairs == null || !pairs.remove(pair) || !pairs.isEmpty())
+            return;
+        // addresses of Tangles without pairs are not needed anymore
+        pairsByTangle.remove(tangle);
+        Set<String> addresses = addressesByTangle.remove(tangle);
+        if(addresses == null)
+            return;
+        for(String address : addresses) {
+            Set<TangleId> tangles = tanglesByAddress.get(address);
+            if(tangles != null && tangles.remove(tangle) && tangles.isEmpty())
+                tanglesByAddress.remove(address);
+        }
+    }
+
+    /**
+     * Unordered pair of Tangles.
+     * */
+    private static class TanglePair {
+        private final TangleId tangleA, tangleB;
+        private final int hashCode;
+
+        private TanglePair(TangleId tangleA, TangleId tangleB) {
+            this.tangleA = tangleA;
+            this.tangleB = tangleB;
+            // symmetric, so that both orders of a pair are equal
+            this.hashCode = tangleA.hashCode() + tangleB.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof TanglePair))
+                return false;
+            TanglePair other = (TanglePair) o;
+            return hashCode == other.hashCode && (tangleA.equals(other.tangleA) && tangleB.equals(other.tangleB)
+                    || tangleA.equals(other.tangleB) && tangleB.equals(other.tangleA));
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.iota.ec.model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of non-negative integers (see {@link TransactionNumbering}) in the style of a Roaring bitmap. The integers are
+ * split by their upper 16 bits into chunks. Each chunk is stored as sorted array while sparse and as plain bitmap of
+ * 2^16 bits once it contains more than {@link #MAX_ARRAY_CONTAINER_SIZE} integers. A past cone of densely numbered
+ * transactions therefore takes up between 2 bytes and 1 bit per transaction instead of a hash set entry.
+ * */
+class CompressedBitmap {
+
+    static final int MAX_ARRAY_CONTAINER_SIZE = 4096;
+
+    // upper 16 bits of the integers in each container, sorted
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int amountOfContainers = 0;
+    private int cardinality = 0;
+
+    /**
+     * @return Whether the integer was not contained before.
+     * */
+    boolean add(int value) {
+        char key = keyOf(value);
+        int index = indexOfKey(key);
+        if(index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        if(!container.add(lowBitsOf(value)))
+            return false;
+        if(container.cardinality() > MAX_ARRAY_CONTAINER_SIZE && container instanceof ArrayContainer)
+            containers[index] = ((ArrayContainer) container).toBitmapContainer();
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * @return Whether the integer was contained.
+     * */
+    boolean remove(int value) {
+        int index = indexOfKey(keyOf(value));
+        if(index < 0)
+            return false;
+        Container container = containers[index];
+        if(!container.remove(lowBitsOf(value)))
+            return false;
+        cardinality--;
+        if(container.cardinality() == 0)
+            removeContainer(index);
+        else if(container.cardinality() <= MAX_ARRAY_CONTAINER_SIZE && container instanceof BitmapContainer)
+            containers[index] = ((BitmapContainer) container).toArrayContainer();
+        return true;
+    }
+
+    boolean contains(int value) {
+        if(value < 0)
+            return false;
+        int index = indexOfKey(keyOf(value));
+        return index >= 0 && containers[index].contains(lowBitsOf(value));
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Adds all integers of another bitmap to this one.
+     * */
+    void or(CompressedBitmap other) {
+        for(int otherIndex = 0; otherIndex < other.amountOfContainers; otherIndex++) {
+            Container otherContainer = other.containers[otherIndex];
+            int index = indexOfKey(other.keys[otherIndex]);
+            if(index < 0) {
+                insertContainer(-index - 1, other.keys[otherIndex], otherContainer.copy());
+                cardinality += otherContainer.cardinality();
+                continue;
+            }
+            Container container = containers[index];
+            int cardinalityBefore = container.cardinality();
+            boolean fitsIntoArray = otherContainer instanceof ArrayContainer
+                    && container.cardinality() + otherContainer.cardinality() <= MAX_ARRAY_CONTAINER_SIZE;
+            if(container instanceof ArrayContainer && !fitsIntoArray)
+                container = ((ArrayContainer) container).toBitmapContainer();
+            container.addAll(otherContainer);
+            containers[index] = container;
+            cardinality += container.cardinality() - cardinalityBefore;
+        }
+    }
+
+    /**
+     * Passes all integers to the action in ascending order.
+     * */
+    void forEach(IntConsumer action) {
+        for(int index = 0; index < amountOfContainers; index++)
+            containers[index].forEach(keys[index] << 16, action);
+    }
+
+    private int indexOfKey(char key) {
+        return Arrays.binarySearch(keys, 0, amountOfContainers, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if(amountOfContainers == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            containers = Arrays.copyOf(containers, containers.length * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, amountOfContainers - index);
+        System.arraycopy(containers, index, containers, index + 1, amountOfContainers - index);
+        keys[index] = key;
+        containers[index] = container;
+        amountOfContainers++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, amountOfContainers - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, amountOfContainers - index - 1);
+        containers[--amountOfContainers] = null;
+    }
+
+    private static char keyOf(int value) {
+        if(value < 0)
+            throw new IllegalArgumentException("Negative value: " + value);
+        return (char) (value >>> 16);
+    }
+
+    private static char lowBitsOf(int value) {
+        return (char) value;
+    }
+
+    private interface Container {
+        boolean add(char value);
+        boolean remove(char value);
+        boolean contains(char value);
+        void addAll(Container other);
+        int cardinality();
+        Container copy();
+        void forEach(int highBits, IntConsumer action);
+    }
+
+    private static class ArrayContainer implements Container {
+
+        private char[] values = new char[4];
+        private int cardinality = 0;
+
+        @Override
+        public boolean add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if(index >= 0)
+                return false;
+            index = -index - 1;
+            if(cardinality == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if(index < 0)
+                return false;
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        /**
+         * Only called with array containers whose union fits into an array container, see {@link CompressedBitmap#or(CompressedBitmap)}.
+         * */
+        @Override
+        public void addAll(Container other) {
+            ArrayContainer otherArray = (ArrayContainer) other;
+            // merge both sorted arrays
+            char[] merged = new char[Math.max(4, cardinality + otherArray.cardinality)];
+            int i = 0, j = 0, size = 0;
+            while (i < cardinality || j < otherArray.cardinality) {
+                if(j == otherArray.cardinality || (i < cardinality && values[i] < otherArray.values[j]))
+                    merged[size++] = values[i++];
+                else if(i == cardinality || otherArray.values[j] < values[i])
+                    merged[size++] = otherArray.values[j++];
+                else {
+                    merged[size++] = values[i++];
+                    j++;
+                }
+            }
+            values = merged;
+            cardinality = size;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.values = Arrays.copyOf(values, Math.max(4, cardinality));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        public void forEach(int highBits, IntConsumer action) {
+            for(int i = 0; i < cardinality; i++)
+                action.accept(highBits | values[i]);
+        }
+
+        private BitmapContainer toBitmapContainer() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for(int i = 0; i < cardinality; i++)
+                bitmap.add(values[i]);
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+
+        private final long[] words = new long[1 << 10];
+        private int cardinality = 0;
+
+        @Override
+        public boolean add(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] |= 1L << value;
+            if(before == words[value >>> 6])
+                return false;
+            cardinality++;
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] &= ~(1L << value);
+            if(before == words[value >>> 6])
+                return false;
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public void addAll(Container other) {
+            if(other instanceof ArrayContainer) {
+                ArrayContainer otherArray = (ArrayContainer) other;
+                for(int i = 0; i < otherArray.cardinality; i++)
+                    add(otherArray.values[i]);
+                return;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            cardinality = 0;
+            for(int i = 0; i < words.length; i++) {
+                words[i] |= otherWords[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        public void forEach(int highBits, IntConsumer action) {
+            for(int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(highBits | ((i << 6) + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArrayContainer() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[cardinality];
+            for(int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    array.values[array.cardinality++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
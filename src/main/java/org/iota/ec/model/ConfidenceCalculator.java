@@ -1,9 +1,8 @@
 package org.iota.ec.model;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class allows to calculate the confidence for a tangle based on the confidence of others and the conflict
@@ -16,26 +15,48 @@ import java.util.Set;
  * assumption we can now ignore all Tangles incompatible with Y and determine the confidence of X in that subset recursively.
  *
  * CONFIDENCE(X) = SUM [over all Y] P(Y) * CONFIDENCE(X|Y)
+ *
+ * Tangles in different connected components of the conflict graph do not affect each other's confidence. The graph is
+ * therefore split into {@link ConflictComponent}s which are calculated independently and in parallel. Components in which
+ * all Tangles conflict with each other (as caused by double spends) are solved in closed form. The evaluation of all
+ * other components is delegated to a {@link MemoizedConfidenceEngine} which solves each subset of Tangles only once and
+ * shares these results among all Tangles of the component. Since this is still exponential in the size of the component,
+ * the confidences are estimated by a {@link SampledConfidenceEngine} instead if the component has more than
+ * {@link #setMaxExactTangles(int) maxExactTangles} Tangles or the exact calculation exceeds the
+ * {@link #setTimeBudget(long) time budget}.
  * */
 public class ConfidenceCalculator {
 
-    private final List<String> tangles;
-    private final Set<Conflict> conflicts;
+    public static final int DEFAULT_MAX_EXACT_TANGLES = 20;
+    public static final long DEFAULT_TIME_BUDGET = 1000;
+    public static final double DEFAULT_ERROR_BOUND = 0.01;
+
+    private final ConflictGraph<?> graph;
     private final double[] initialProbabilities;
+    private double[] confidences;
+    private double[] errors;
+    private boolean sampled;
 
-    public ConfidenceCalculator(List<String> allTangles, Set<Conflict> conflicts, double[] initialProbabilitiesOfAllTangles) {
-        this.tangles = new LinkedList<>(allTangles);
-        this.conflicts = conflicts;
-        removeConflictFreeTangles(allTangles);
+    private int maxExactTangles = DEFAULT_MAX_EXACT_TANGLES;
+    private long timeBudget = DEFAULT_TIME_BUDGET;
+    private double errorBound = DEFAULT_ERROR_BOUND;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private Long randomSeed = null;
 
-        this.initialProbabilities = new double[this.tangles.size()];
+    public ConfidenceCalculator(List<String> allTangles, Set<Conflict> conflicts, double[] initialProbabilitiesOfAllTangles) {
+        this.graph = new ConflictGraph<>(allTangles, conflicts);
+        this.initialProbabilities = new double[graph.size()];
         adoptProbabilitiesIfPossible(allTangles, initialProbabilitiesOfAllTangles);
     }
 
-    private void removeConflictFreeTangles(List<String> allTangles) {
-        for(String tangle : allTangles)
-            if(amountOfConflicts(tangle) == 0)
-                this.tangles.remove(tangle);
+    /**
+     * @param graph Conflict relation among all Tangles.
+     * @param initialProbabilities Probabilities of the Tangles, positioned according to their index in the graph.
+     * */
+    ConfidenceCalculator(ConflictGraph<?> graph, double[] initialProbabilities) {
+        assert graph.size() == initialProbabilities.length;
+        this.graph = graph;
+        this.initialProbabilities = initialProbabilities;
     }
 
     private void adoptProbabilitiesIfPossible(List<String> allTangles, double[] initialProbabilitiesOfAllTangles) {
@@ -48,29 +69,59 @@ public class ConfidenceCalculator {
     }
 
     /**
-     * Adopts the initial probabilities specified of a superset of Tangles to the subset in {@link ConfidenceCalculator#tangles}.
-     * @param allTangles a superset of Tangles, can contain more Tangles than used in this {@link ConfidenceCalculator} instance.
-     * @param initialProbabilitiesOfAllTangles The probabilities belonging to the superset which shall be adopted. Must be positioned accordingly.
+     * Adopts the initial probabilities of the Tangles. Probabilities do not have to be normalized, this happens
+     * separately for every set of Tangles considered during the calculation.
+     * @param allTangles All Tangles, can contain duplicates in which case only the first occurrence is considered.
+     * @param initialProbabilitiesOfAllTangles The probabilities belonging to the Tangles. Must be positioned accordingly.
      * */
     private void adoptProbabilities(List<String> allTangles, double[] initialProbabilitiesOfAllTangles) {
-        // extract probabilities of tangles which were not deleted
-        double sum = 0;
-        for(int i = 0; i < this.initialProbabilities.length; i++) {
-            this.initialProbabilities[i] = initialProbabilitiesOfAllTangles[allTangles.indexOf(this.tangles.get(i))];
-            sum += this.initialProbabilities[i];
+        BitSet adopted = new BitSet(graph.size());
+        int position = 0;
+        for(String tangle : allTangles) {
+            int index = graph.indexOf(tangle);
+            if(!adopted.get(index)) {
+                adopted.set(index);
+                this.initialProbabilities[index] = initialProbabilitiesOfAllTangles[position];
+            }
+            position++;
         }
-        // normalize: sum of probabilities must be 1
-        if(sum > 0)
-            for(int i = 0; i < this.initialProbabilities.length; i++)
-                this.initialProbabilities[i] /= sum;
     }
 
     /**
-     * @param tangle The Tangle for which to estimate the initial probability.
-     * @return initial probability of the respective Tangle confirming first.
+     * @param maxExactTangles Maximum amount of conflicting Tangles for which to calculate the confidences exactly. Above, they are sampled.
+     * */
+    public void setMaxExactTangles(int maxExactTangles) {
+        this.maxExactTangles = maxExactTangles;
+    }
+
+    /**
+     * @param timeBudget Time in milliseconds for the whole calculation. The exact calculation is given up in favor of
+     *                   sampling once it is exceeded. Sampling only gets the remaining time of the same budget (at least
+     *                   a minimum amount of samples), even if the {@link #setErrorBound(double) error bound} is not reached.
+     * */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @param errorBound Maximum {@link #errorOf(String) error} at which sampling can stop.
+     * */
+    public void setErrorBound(double errorBound) {
+        this.errorBound = errorBound;
+    }
+
+    /**
+     * @param randomSeed Seed for sampling, so that sampled confidences are reproducible. Random if not set.
      * */
-    private double initialProbabilityOf(String tangle) {
-        return initialProbabilities[tangles.indexOf(tangle)];
+    public void setRandomSeed(long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * @param pool The pool on which to calculate the conflict components in parallel.
+     * */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
     /**
@@ -78,44 +129,109 @@ public class ConfidenceCalculator {
      * @return the confidence of the Tangle under the assumptions made by this {@link ConfidenceCalculator} object.
      * */
     public double confidenceOf(String tangle) {
-
-        if(amountOfConflicts(tangle) == 0)
-            // Tangle is compatible with all others -> can be merged with any of them.
+        int index = graph.indexOf(tangle);
+        if(index < 0)
+            // Tangle is not in conflict with any of the others -> can be merged with any of them.
             return 1;
+        return confidenceAt(index);
+    }
 
-        double p = 0;
+    /**
+     * @param index Index of the Tangle in the conflict graph this calculator was created with.
+     * @see #confidenceOf(String)
+     * */
+    double confidenceAt(int index) {
+        calculateIfNecessary();
+        return confidences[index];
+    }
 
-        for (String otherTangle : compatible(tangle)) {
-            p += initialProbabilityOf(otherTangle) * (tangle.equals(otherTangle) ? 1 : new ConfidenceCalculator(compatible(otherTangle), conflicts, initialProbabilities).confidenceOf(tangle));
-         }
-        return p;
+    /**
+     * @param tangle The Tangle for which to determine the error.
+     * @return The maximum deviation of {@link #confidenceOf(String)} from the actual confidence with 95% certainty. Zero if calculated exactly.
+     * */
+    public double errorOf(String tangle) {
+        int index = graph.indexOf(tangle);
+        if(index < 0)
+            return 0;
+        return errorAt(index);
     }
 
     /**
-     * @param tangle The Tangle for which to find all compatible Tangles.
-     * @return All Tangles in {@link #tangles} compatible with the respective tangle.
+     * @param index Index of the Tangle in the conflict graph this calculator was created with.
+     * @see #errorOf(String)
      * */
-    private List<String> compatible(String tangle) {
-        List<String> compatible = new LinkedList<>(tangles);
-        for(Conflict conflict : conflicts)
-            if(conflict.appliesTo(tangle, tangles))
-                compatible.remove(conflict.getOther(tangle));
-        return compatible;
+    double errorAt(int index) {
+        calculateIfNecessary();
+        return errors[index];
     }
 
     /**
-     * @param tangle The Tangle for which to count the amount of conflicts.
-     * @return The amount of Tangles in {@link #tangles} this Tangle stands in conflict to.
+     * @return Whether the confidences are estimated by sampling instead of being calculated exactly.
      * */
-    private int amountOfConflicts(String tangle) {
-        int amountOfConflicts = 0;
-        for(Conflict conflict : conflicts)
-            if(conflict.appliesTo(tangle, tangles))
-                amountOfConflicts++;
-        return amountOfConflicts;
+    public boolean isSampled() {
+        calculateIfNecessary();
+        return sampled;
+    }
+
+    private void calculateIfNecessary() {
+        if(confidences != null)
+            return;
+        double[] confidences = new double[graph.size()];
+        errors = new double[graph.size()];
+        // Tangles compatible with all others can be merged with any of them, they are not part of any component.
+        Arrays.fill(confidences, 1);
+
+        List<ConflictComponent> components = new ArrayList<>(ConflictComponent.findComponents(graph, initialProbabilities));
+        long deadline = System.currentTimeMillis() + timeBudget;
+        pool.invoke(new ComponentCalculation(components, 0, components.size(), confidences, deadline));
+
+        for(ConflictComponent component : components)
+            sampled |= component.isSampled();
+        this.confidences = confidences;
     }
 
+    /**
+     * Calculates a range of components, splitting it recursively until each task covers only a few Tangles.
+     * */
+    private class ComponentCalculation extends RecursiveAction {
+
+        private static final int MAX_TANGLES_PER_TASK = 64;
 
+        private final List<ConflictComponent> components;
+        private final int from, to;
+        private final double[] confidences;
+        private final long deadline;
+
+        private ComponentCalculation(List<ConflictComponent> components, int from, int to, double[] confidences, long deadline) {
+            this.components = components;
+            this.from = from;
+            this.to = to;
+            this.confidences = confidences;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1 && amountOfTangles() > MAX_TANGLES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComponentCalculation(components, from, middle, confidences, deadline),
+                        new ComponentCalculation(components, middle, to, confidences, deadline));
+            } else {
+                for(int i = from; i < to; i++) {
+                    // derived from the component index, so that results do not depend on the order of execution
+                    SplittableRandom random = randomSeed == null ? new SplittableRandom() : new SplittableRandom(randomSeed + i);
+                    components.get(i).calculate(confidences, errors, maxExactTangles, deadline, errorBound, random);
+                }
+            }
+        }
+
+        private int amountOfTangles() {
+            int amount = 0;
+            for(int i = from; i < to; i++)
+                amount += components.get(i).size();
+            return amount;
+        }
+    }
 
     /**
      * This class models that two tangles are in conflict with each other. They cannot both confirm.
@@ -123,48 +239,44 @@ public class ConfidenceCalculator {
     public static class Conflict {
         private final String tangle1;
         private final String tangle2;
+        private final int hashCode;
 
         /**
          * @param tangle1 First Tangle to be in conflict with the second.
          * @param tangle2 Second Tangle to be in conflict with the first.
          * */
         Conflict(String tangle1, String tangle2) {
-            this.tangle1 = tangle1;
-            this.tangle2 = tangle2;
+            // order Tangles so that equal conflicts have equal fields
+            boolean ordered = tangle1.compareTo(tangle2) < 0;
+            this.tangle1 = ordered ? tangle1 : tangle2;
+            this.tangle2 = ordered ? tangle2 : tangle1;
+            this.hashCode = 31 * this.tangle1.hashCode() + this.tangle2.hashCode();
         }
 
-        /**
-         * @param tangle The Tangle for which to determine whether this conflict applies to.
-         * @param tangles The context of existent Tangles. Both Tangles of the conflict must be included to let this conflict apply.
-         * @return Whether this conflict is relevant for a specific Tangle in some context of existing Tangles.
-         * */
-        boolean appliesTo(String tangle, List<String> tangles) {
-            return (tangle1.equals(tangle) || tangle2.equals(tangle)) && tangles.contains(tangle1) && tangles.contains(tangle2);
+        String getTangle1() {
+            return tangle1;
         }
 
-        /**
-         * @param tangle One of the two Tangles this conflict applies to.
-         * @return The other Tangle which stands in conflict to the Tangle passed as parameter.
-         * */
-        String getOther(String tangle) {
-            if(tangle.equals(tangle1) || tangle.equals(tangle2))
-                return tangle1.equals(tangle) ? tangle2 : tangle1;
-            throw new IllegalArgumentException();
+        String getTangle2() {
+            return tangle2;
         }
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Conflict && obj.toString().equals(toString());
+            if(!(obj instanceof Conflict))
+                return false;
+            Conflict conflict = (Conflict) obj;
+            return hashCode == conflict.hashCode && tangle1.equals(conflict.tangle1) && tangle2.equals(conflict.tangle2);
         }
 
         @Override
         public int hashCode() {
-            return toString().hashCode();
+            return hashCode;
         }
 
         @Override
         public String toString() {
-            return tangle1.compareTo(tangle2) < 0 ? tangle1 + tangle2 : tangle2 + tangle1;
+            return tangle1 + tangle2;
         }
     }
-}
\ No newline at end of file
+}
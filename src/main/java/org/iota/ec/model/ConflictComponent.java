@@ -0,0 +1,140 @@
+package org.iota.ec.model;
+
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A connected component of the conflict graph. Tangles of different components do not affect each other's confidence:
+ * whenever a Tangle of another component confirms, the relative probabilities of the remaining Tangles in this component
+ * stay the same. Each component can therefore be calculated in isolation on its own, locally numbered Tangles.
+ * */
+class ConflictComponent {
+
+    private final int[] tangles;
+    private final BitSet[] conflicts;
+    private final double[] initialProbabilities;
+    private boolean sampled = false;
+
+    /**
+     * Splits the conflict graph into its connected components. Tangles without any conflicts are not part of any component.
+     * @param graph The conflict graph to split.
+     * @param initialProbabilities Not necessarily normalized probability of each Tangle to confirm first.
+     * */
+    static List<ConflictComponent> findComponents(ConflictGraph<?> graph, double[] initialProbabilities) {
+        List<ConflictComponent> components = new LinkedList<>();
+        BitSet visited = new BitSet(graph.size());
+        int[] queue = new int[graph.size()];
+        int[] localIndex = new int[graph.size()];
+
+        for(int start = 0; start < graph.size(); start++) {
+            if(visited.get(start) || graph.conflictsOf(start).isEmpty())
+                continue;
+            visited.set(start);
+            queue[0] = start;
+            int size = 1;
+            for(int head = 0; head < size; head++) {
+                BitSet neighbours = graph.conflictsOf(queue[head]);
+                for(int neighbour = neighbours.nextSetBit(0); neighbour >= 0; neighbour = neighbours.nextSetBit(neighbour+1)) {
+                    if(!visited.get(neighbour)) {
+                        visited.set(neighbour);
+                        queue[size++] = neighbour;
+                    }
+                }
+            }
+            int[] tangles = new int[size];
+            System.arraycopy(queue, 0, tangles, 0, size);
+            components.add(new ConflictComponent(tangles, graph, initialProbabilities, localIndex));
+        }
+        return components;
+    }
+
+    private ConflictComponent(int[] tangles, ConflictGraph<?> graph, double[] globalInitialProbabilities, int[] localIndex) {
+        this.tangles = tangles;
+        this.conflicts = new BitSet[tangles.length];
+        this.initialProbabilities = new double[tangles.length];
+        for(int i = 0; i < tangles.length; i++)
+            localIndex[tangles[i]] = i;
+        for(int i = 0; i < tangles.length; i++) {
+            conflicts[i] = new BitSet(tangles.length);
+            BitSet globalConflictsOfTangle = graph.conflictsOf(tangles[i]);
+            for(int other = globalConflictsOfTangle.nextSetBit(0); other >= 0; other = globalConflictsOfTangle.nextSetBit(other+1))
+                conflicts[i].set(localIndex[other]);
+            initialProbabilities[i] = globalInitialProbabilities[tangles[i]];
+        }
+    }
+
+    /**
+     * Calculates the confidences of all Tangles in this component and writes them to the respective (global) positions.
+     * @param confidences Array to write the confidences to, indexed by the global Tangle index.
+     * @param errors Array to write the errors to, indexed by the global Tangle index.
+     * @param deadline Deadline for the exact calculation and sampling together.
+     * @param random Source of randomness for sampling.
+     * @see ConfidenceCalculator for the parameters.
+     * */
+    void calculate(double[] confidences, double[] errors, int maxExactTangles, long deadline, double errorBound, SplittableRandom random) {
+        if(isClique()) {
+            calculateClique(confidences, errors);
+            return;
+        }
+
+        BitSet all = new BitSet(tangles.length);
+        all.set(0, tangles.length);
+
+        if(tangles.length <= maxExactTangles) {
+            try {
+                MemoizedConfidenceEngine engine = new MemoizedConfidenceEngine(conflicts, initialProbabilities, MemoizedConfidenceEngine.DEFAULT_CACHE_CAPACITY);
+                double[] local = engine.confidencesIn(all, deadline);
+                for(int i = 0; i < tangles.length; i++) {
+                    confidences[tangles[i]] = local[i];
+                    errors[tangles[i]] = 0;
+                }
+                return;
+            } catch (MemoizedConfidenceEngine.DeadlineExceededException e) {
+                // fall back to sampling
+            }
+        }
+
+        sampled = true;
+        SampledConfidenceEngine sampler = new SampledConfidenceEngine(conflicts, initialProbabilities, random);
+        // only the time left after the exact attempt, not a fresh budget
+        sampler.sample(all, errorBound, deadline);
+        for(int i = 0; i < tangles.length; i++) {
+            confidences[tangles[i]] = sampler.confidenceOf(i);
+            errors[tangles[i]] = sampler.errorOf(i);
+        }
+    }
+
+    /**
+     * In a clique (e.g. several transfers spending the same funds) exactly one Tangle will confirm: the one picked first.
+     * The confidence of each Tangle is therefore simply its normalized initial probability.
+     * */
+    private void calculateClique(double[] confidences, double[] errors) {
+        double sum = 0;
+        for(double initialProbability : initialProbabilities)
+            sum += initialProbability;
+        for(int i = 0; i < tangles.length; i++) {
+            confidences[tangles[i]] = sum > 0 ? initialProbabilities[i] / sum : initialProbabilities[i];
+            errors[tangles[i]] = 0;
+        }
+    }
+
+    /**
+     * @return Whether every Tangle of this component is in conflict with every other one.
+     * */
+    boolean isClique() {
+        for(BitSet conflictsOfTangle : conflicts)
+            if(conflictsOfTangle.cardinality() != tangles.length - 1)
+                return false;
+        return true;
+    }
+
+    int size() {
+        return tangles.length;
+    }
+
+    boolean isSampled() {
+        return sampled;
+    }
+}
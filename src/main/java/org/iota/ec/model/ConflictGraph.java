@@ -0,0 +1,94 @@
+package org.iota.ec.model;
+
+import java.util.*;
+
+/**
+ * Models the conflict relation among Tangles. Each Tangle is mapped to a dense index in the order in which it was added,
+ * the conflicts are stored as adjacency {@link BitSet}s over these indices. This allows all calculations to operate on
+ * integers and bits instead of Tangle IDs.
+ * @param <T> Type of the Tangle IDs, e.g. {@link TangleId}.
+ * */
+class ConflictGraph<T> {
+
+    private final Map<T, Integer> indexByTangle = new HashMap<>();
+    private final List<T> tangles;
+    private final BitSet[] conflicts;
+
+    /**
+     * @param tangles All Tangles to model. Duplicates are only indexed once at their first occurrence.
+     * */
+    ConflictGraph(List<T> tangles) {
+        List<T> distinct = new ArrayList<>(tangles.size());
+        for(T tangle : tangles)
+            if(!indexByTangle.containsKey(tangle)) {
+                indexByTangle.put(tangle, distinct.size());
+                distinct.add(tangle);
+            }
+        this.tangles = distinct;
+        this.conflicts = new BitSet[this.tangles.size()];
+        for(int i = 0; i < conflicts.length; i++)
+            conflicts[i] = new BitSet(conflicts.length);
+    }
+
+    /**
+     * @param tangles All Tangles to model.
+     * @param conflicts Conflicts among the Tangles. Conflicts referring to unknown Tangles are ignored.
+     * */
+    ConflictGraph(List<T> tangles, Set<ConfidenceCalculator.Conflict> conflicts) {
+        this(tangles);
+        for(ConfidenceCalculator.Conflict conflict : conflicts) {
+            int index1 = indexOf(conflict.getTangle1());
+            int index2 = indexOf(conflict.getTangle2());
+            // conflicts are only relevant if both Tangles exist
+            if(index1 >= 0 && index2 >= 0)
+                addConflict(index1, index2);
+        }
+    }
+
+    void addConflict(int index1, int index2) {
+        conflicts[index1].set(index2);
+        conflicts[index2].set(index1);
+    }
+
+    /**
+     * @return The index of the Tangle or -1 if the Tangle is unknown.
+     * */
+    int indexOf(Object tangle) {
+        Integer index = indexByTangle.get(tangle);
+        return index == null ? -1 : index;
+    }
+
+    T getTangle(int index) {
+        return tangles.get(index);
+    }
+
+    /**
+     * @return All Tangles in conflict with the Tangle at the specified index. Must not be modified.
+     * */
+    BitSet conflictsOf(int index) {
+        return conflicts[index];
+    }
+
+    int size() {
+        return tangles.size();
+    }
+
+    /**
+     * Converts adjacency bit sets into compressed sparse rows: the neighbours of node {@code i} are located at
+     * {@code neighbours[offsets[i]]} to {@code neighbours[offsets[i+1]-1]}.
+     * @param adjacency Adjacency bit sets of a symmetric relation.
+     * @return {@code {offsets, neighbours}}
+     * */
+    static int[][] toCompressedSparseRows(BitSet[] adjacency) {
+        int[] offsets = new int[adjacency.length + 1];
+        for(int i = 0; i < adjacency.length; i++)
+            offsets[i+1] = offsets[i] + adjacency[i].cardinality();
+        int[] neighbours = new int[offsets[adjacency.length]];
+        for(int i = 0; i < adjacency.length; i++) {
+            int position = offsets[i];
+            for(int neighbour = adjacency[i].nextSetBit(0); neighbour >= 0; neighbour = adjacency[i].nextSetBit(neighbour+1))
+                neighbours[position++] = neighbour;
+        }
+        return new int[][] {offsets, neighbours};
+    }
+}
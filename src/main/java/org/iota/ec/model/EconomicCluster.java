@@ -9,17 +9,66 @@ import org.iota.ict.network.gossip.GossipFilter;
 import org.iota.ict.network.gossip.GossipListener;
 import org.iota.ict.utils.Constants;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
 
+/**
+ * Aggregates the markers of all followed actors. Besides answering confidence queries, the cluster keeps a log of which
+ * marked Tangles changed (new markers, updated confidences or extended past cones) so that autonomous actors can
+ * restrict their calculations to the part of the cluster that actually changed since they last looked at it.
+ *
+ * Large past cones of new markers are marked in chunks of {@link #MARKING_CHUNK_SIZE} transactions on a background
+ * thread, so that marker arrival does not stall the gossip thread.
+ *
+ * The numbers of transactions which Ict no longer stores are released on the same thread, so that the
+ * {@link TransactionNumbering} shared by the actors is bounded by the capacity of the Ict storage. Whenever
+ * {@link #MARKING_CHUNK_SIZE} transactions were numbered, twice as many numbers are checked, starting where the previous
+ * check stopped. Marking is paused while the released transactions are removed from the past cones.
+ * */
 public class EconomicCluster implements GossipListener {
 
+    public static final int MARKING_CHUNK_SIZE = 1000;
+
     private final Ixi ixi;
-    private List<TrustedEconomicActor> actors = new LinkedList<>();
+    // iterated by the ticks of autonomous actors while actors are added or removed
+    private final List<TrustedEconomicActor> actors = new CopyOnWriteArrayList<>();
     private final ECGossipFilter filter = new ECGossipFilter();
 
+    private long version = 0;
+    private long versionOfLastGlobalChange = 0;
+    private final NavigableMap<Long, String> changedTangleByVersion = new TreeMap<>();
+    private final Map<String, Long> versionByChangedTangle = new HashMap<>();
+    private final List<Runnable> markerListeners = new CopyOnWriteArrayList<>();
+    // version up to which the marker listeners were notified, see notifyMarkerListeners()
+    private long notifiedVersion = 0;
+    private TransferVerifier transferVerifier = null;
+    private final TransactionNumbering transactionNumbering = new TransactionNumbering();
+    // actors whose past cones miss a transaction, only these have to process it once it arrives
+    private final Map<Hash, List<TrustedEconomicActor>> actorsByMissingTransaction = new HashMap<>();
+    private final Set<TrustedEconomicActor> actorsScheduledForMarking = ConcurrentHashMap.newKeySet();
+    // marking holds the read lock, releasing transaction numbers the write lock
+    private final ReadWriteLock numberingLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean recyclingScheduled = new AtomicBoolean(false);
+    private volatile int numberedAfterLastRecycling = 0;
+    // number to continue with in the next recycleTransactionNumbers() call
+    private int nextNumberToCheck = 0;
+    private final ExecutorService markingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "EC.ixi-marking");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     public EconomicCluster(Ixi ixi) {
         this.ixi = ixi;
         ixi.addListener(this);
@@ -30,23 +79,168 @@ public class EconomicCluster implements GossipListener {
             throw new IllegalArgumentException("Actor " + actor.getAddress() + " already added.");
         actors.add(actor);
         filter.watchAddress(actor.getAddress());
+        // whatever exceeds the budget is marked in the background, see scheduleMarking()
+        actor.setInlineMarkingBudget(MARKING_CHUNK_SIZE);
 
-        if(sync) {
-            Set<Transaction> possibleMarkers = ixi.findTransactionsByAddress(actor.getAddress());
-            for(Transaction transaction : possibleMarkers) {
-                if(!transaction.isBundleHead)
-                    continue;
-                Bundle possiblyMarker = new Bundle(transaction);
-                if(!possiblyMarker.isStructureValid())
-                    return;
-                actor.processMarker(possiblyMarker);
+        numberingLock.readLock().lock();
+        try {
+            if(sync) {
+                Set<Transaction> possibleMarkers = ixi.findTransactionsByAddress(actor.getAddress());
+                for(Transaction transaction : possibleMarkers) {
+                    if(!transaction.isBundleHead)
+                        continue;
+                    Bundle possiblyMarker = new Bundle(transaction);
+                    if(!possiblyMarker.isStructureValid())
+                        break;
+                    actor.processMarker(possiblyMarker);
+                }
             }
+            collectMarkingResults(actor);
+        } finally {
+            numberingLock.readLock().unlock();
         }
+        scheduleMarking(actor);
+        recordGlobalChange();
     }
 
     public void removeActor(TrustedEconomicActor actor) {
         actors.remove(actor);
         filter.unwatchAddress(actor.getAddress());
+        synchronized (actorsByMissingTransaction) {
+            Iterator<List<TrustedEconomicActor>> iterator = actorsByMissingTransaction.values().iterator();
+            while (iterator.hasNext()) {
+                List<TrustedEconomicActor> waiting = iterator.next();
+                waiting.remove(actor);
+                if(waiting.isEmpty())
+                    iterator.remove();
+            }
+        }
+        recordGlobalChange();
+    }
+
+    public void shutdown() {
+        markingExecutor.shutdownNow();
+    }
+
+    public void setTrust(TrustedEconomicActor actor, double trust) {
+        actor.setTrust(trust);
+        recordGlobalChange();
+    }
+
+    /**
+     * @param transferVerifier Verifier to offer all received transactions to, so that transfers are verified before they
+     *                         have to be validated.
+     * */
+    public void setTransferVerifier(TransferVerifier transferVerifier) {
+        this.transferVerifier = transferVerifier;
+    }
+
+    /**
+     * @return Numbering to pass to the actors of this cluster, so that the hashes in their past cones are stored only once.
+     * */
+    public TransactionNumbering getTransactionNumbering() {
+        return transactionNumbering;
+    }
+
+    /**
+     * @param listener Notified whenever marked Tangles changed, either on the gossip thread by a received marker or
+     *                 transaction or on the marking thread by a background marking chunk. Changes recorded at once are
+     *                 notified once. Must return quickly.
+     * */
+    public void addMarkerListener(Runnable listener) {
+        markerListeners.add(listener);
+    }
+
+    public void removeMarkerListener(Runnable listener) {
+        markerListeners.remove(listener);
+    }
+
+    /**
+     * @return The current version of the cluster which increases with every change.
+     * */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Whether there was a change since that version which potentially affects all Tangles (e.g. a trust change).
+     * */
+    public synchronized boolean hasGlobalChangeSince(long version) {
+        return versionOfLastGlobalChange > version;
+    }
+
+    /**
+     * @return All marked Tangles which were changed since that version.
+     * */
+    public synchronized Set<String> getTanglesChangedSince(long version) {
+        return new HashSet<>(changedTangleByVersion.tailMap(version, false).values());
+    }
+
+    /**
+     * A Tangle is affected by a change if it was changed itself or if its references are part of the past cone of a changed
+     * Tangle. In the latter case, the change shifts the approval confidence of the references.
+     * @param version The version since which to consider changes.
+     * @param tangles The Tangles to check for being affected by a change.
+     * @return All changed Tangles and all Tangles among the specified ones which are affected by these changes.
+     * */
+    public Set<TangleId> getTanglesAffectedSince(long version, Collection<TangleId> tangles) {
+        Set<String> changed = getTanglesChangedSince(version);
+        Set<TangleId> affected = new HashSet<>();
+        if(changed.isEmpty())
+            return affected;
+        for(String changedTangle : changed)
+            affected.add(TangleId.of(changedTangle));
+        // the past cones of the changed Tangles are walked once against this index instead of probing each Tangle
+        Map<Hash, List<TangleId>> tanglesByReference = new HashMap<>();
+        for(TangleId tangle : tangles) {
+            if(affected.contains(tangle))
+                continue;
+            indexByReference(tanglesByReference, tangle.getReference1(), tangle);
+            indexByReference(tanglesByReference, tangle.getReference2(), tangle);
+        }
+        for(TrustedEconomicActor actor : actors) {
+            if(tanglesByReference.isEmpty())
+                break;
+            affected.addAll(actor.findTanglesReferencedThrough(changed, tanglesByReference));
+        }
+        return affected;
+    }
+
+    private static void indexByReference(Map<Hash, List<TangleId>> tanglesByReference, Hash reference, TangleId tangle) {
+        List<TangleId> referencing = tanglesByReference.get(reference);
+        if(referencing == null) {
+            referencing = new LinkedList<>();
+            tanglesByReference.put(reference, referencing);
+        }
+        referencing.add(tangle);
+    }
+
+    private synchronized void recordChange(String tangle) {
+        Long previousVersion = versionByChangedTangle.put(tangle, ++version);
+        if(previousVersion != null)
+            changedTangleByVersion.remove(previousVersion);
+        changedTangleByVersion.put(version, tangle);
+    }
+
+    /**
+     * Notifies the marker listeners once for all changes recorded since the last notification, so that a chunk or a
+     * marker changing several Tangles triggers a single notification.
+     * */
+    private void notifyMarkerListeners() {
+        synchronized (this) {
+            if(notifiedVersion == version)
+                return;
+            notifiedVersion = version;
+        }
+        for(Runnable listener : markerListeners)
+            listener.run();
+    }
+
+    private synchronized void recordGlobalChange() {
+        versionOfLastGlobalChange = ++version;
+        // individual changes before are covered by the global change
+        changedTangleByVersion.clear();
+        versionByChangedTangle.clear();
     }
 
     public Set<String> getAllTangles() {
@@ -56,37 +250,55 @@ public class EconomicCluster implements GossipListener {
         return allTangles;
     }
 
+    /**
+     * @return Whether any actor currently marks that Tangle.
+     * */
+    public boolean isMarked(String tangle) {
+        for(TrustedEconomicActor actor : actors)
+            if(actor.hasMarked(tangle))
+                return true;
+        return false;
+    }
+
     public double determineApprovalConfidence(String transactionHash) {
-        double maxAbsTrust = calcMaxAbsTrust();
+        // sum and maximum over the same actors, even if actors are added or removed meanwhile
+        double maxAbsTrust = 0;
         double absTrust = 0;
         for(TrustedEconomicActor actor : actors) {
+            maxAbsTrust += actor.getTrust();
             absTrust += actor.getTrust() * actor.getConfidence(transactionHash);
         }
         return maxAbsTrust > 0 ? absTrust / maxAbsTrust : 0;
     }
 
     public double determineTurnout(String transactionHash) {
-        double maxAbsTurnout = calcMaxAbsTrust();
+        double maxAbsTurnout = 0;
         double absTurnout = 0;
         for(TrustedEconomicActor actor : actors) {
+            maxAbsTurnout += actor.getTrust();
             if(actor.hasReferenced(transactionHash))
                 absTurnout += actor.getTrust();
         }
         return maxAbsTurnout > 0 ? absTurnout / maxAbsTurnout : 0;
     }
 
-    private double calcMaxAbsTrust() {
-        double trustSum = 0;
-        for(TrustedEconomicActor actor : actors) {
-            trustSum += actor.getTrust();
-        }
-        return trustSum;
-    }
-
     @Override
     public void onReceive(GossipEvent event) {
         Transaction transaction = event.getTransaction();
 
+        if(transferVerifier != null)
+            transferVerifier.offer(transaction);
+
+        numberingLock.readLock().lock();
+        try {
+            processReceivedTransaction(transaction);
+        } finally {
+            numberingLock.readLock().unlock();
+        }
+        notifyMarkerListeners();
+    }
+
+    private void processReceivedTransaction(Transaction transaction) {
         if(filter.passes(transaction)) {
 
             Bundle possiblyMarker = new Bundle(transaction);
@@ -94,13 +306,155 @@ public class EconomicCluster implements GossipListener {
                 return;
 
             for(TrustedEconomicActor actor : actors) {
-                if(actor.getAddress().equals(transaction.address()))
-                    actor.processMarker(possiblyMarker);
+                if(actor.getAddress().equals(transaction.address())) {
+                    String changedTangle = actor.processMarker(possiblyMarker);
+                    collectMarkingResults(actor);
+                    scheduleMarking(actor);
+                    if(changedTangle != null)
+                        recordChange(changedTangle);
+                }
             }
         }
 
-        for(TrustedEconomicActor actor : actors) {
-            actor.processTransaction(transaction);
+        processMissingTransaction(transaction, Hash.of(transaction.hash));
+    }
+
+    private void processMissingTransaction(Transaction transaction, Hash hash) {
+        List<TrustedEconomicActor> waiting;
+        synchronized (actorsByMissingTransaction) {
+            waiting = actorsByMissingTransaction.remove(hash);
+        }
+        if(waiting == null)
+            return;
+        for(TrustedEconomicActor actor : waiting) {
+            for(String extendedTangle : actor.processTransaction(transaction, hash))
+                recordChange(extendedTangle);
+            // extending the past cone might have revealed further missing transactions
+            collectMarkingResults(actor);
+            scheduleMarking(actor);
+        }
+    }
+
+    /**
+     * Continues marking the past cones of the actor in the background, one chunk at a time. Other actors are scheduled in
+     * between, so that one large past cone does not delay all others.
+     * */
+    private void scheduleMarking(final TrustedEconomicActor actor) {
+        if(markingExecutor.isShutdown() || !actor.hasPendingMarking() || !actorsScheduledForMarking.add(actor))
+            return;
+        markingExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                numberingLock.readLock().lock();
+                try {
+                    for(String extendedTangle : actor.continueMarking(MARKING_CHUNK_SIZE))
+                        recordChange(extendedTangle);
+                    collectMarkingResults(actor);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    numberingLock.readLock().unlock();
+                    actorsScheduledForMarking.remove(actor);
+                }
+                notifyMarkerListeners();
+                scheduleMarking(actor);
+            }
+        });
+    }
+
+    /**
+     * Collects what marking the past cones of the actor revealed: transactions it started to miss and marked Tangles it
+     * released because they were superseded by newer markers.
+     * */
+    private void collectMarkingResults(TrustedEconomicActor actor) {
+        for(String releasedTangle : actor.pollReleasedTangles())
+            recordChange(releasedTangle);
+        indexMissingTransactions(actor);
+        scheduleRecycling();
+    }
+
+    private void scheduleRecycling() {
+        if(transactionNumbering.size() < numberedAfterLastRecycling + MARKING_CHUNK_SIZE)
+            return;
+        if(markingExecutor.isShutdown() || !recyclingScheduled.compareAndSet(false, true))
+            return;
+        markingExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    recycleTransactionNumbers(2 * MARKING_CHUNK_SIZE);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    recyclingScheduled.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases the numbers of transactions which are no longer stored by Ict, unless an actor still needs them. The
+     * transactions are removed from the past cones first, since a released number is reassigned to another transaction.
+     * Actors with a numbering of their own are not affected.
+     * @param amountToCheck Amount of numbers to check.
+     * */
+    void recycleTransactionNumbers(int amountToCheck) {
+        numberingLock.writeLock().lock();
+        try {
+            List<TrustedEconomicActor> actorsSharingNumbering = new LinkedList<>();
+            for(TrustedEconomicActor actor : actors)
+                if(actor.usesNumbering(transactionNumbering))
+                    actorsSharingNumbering.add(actor);
+
+            CompressedBitmap releasable = new CompressedBitmap();
+            int amountOfNumbers = transactionNumbering.getAmountOfNumbers();
+            for(int i = 0; i < Math.min(amountToCheck, amountOfNumbers); i++) {
+                int number = nextNumberToCheck % amountOfNumbers;
+                nextNumberToCheck = number + 1;
+                Hash hash = transactionNumbering.hashOf(number);
+                if(hash != null && ixi.findTransactionByHash(hash.toString()) == null && !isPinned(actorsSharingNumbering, number))
+                    releasable.add(number);
+            }
+
+            for(TrustedEconomicActor actor : actorsSharingNumbering)
+                actor.forgetTransactions(releasable);
+            releasable.forEach(new IntConsumer() {
+                @Override
+                public void accept(int number) {
+                    transactionNumbering.release(number);
+                }
+            });
+            numberedAfterLastRecycling = transactionNumbering.size();
+        } finally {
+            numberingLock.writeLock().unlock();
+        }
+    }
+
+    private static boolean isPinned(List<TrustedEconomicActor> actors, int transactionNumber) {
+        for(TrustedEconomicActor actor : actors)
+            if(actor.isPinned(transactionNumber))
+                return true;
+        return false;
+    }
+
+    private void indexMissingTransactions(TrustedEconomicActor actor) {
+        List<Hash> newlyMissing = actor.pollNewlyMissingTransactions();
+        synchronized (actorsByMissingTransaction) {
+            for(Hash hash : newlyMissing) {
+                List<TrustedEconomicActor> waiting = actorsByMissingTransaction.get(hash);
+                if(waiting == null) {
+                    waiting = new LinkedList<>();
+                    actorsByMissingTransaction.put(hash, waiting);
+                }
+                if(!waiting.contains(actor))
+                    waiting.add(actor);
+            }
+        }
+        // the transaction might have arrived after the actor looked for it but before it was indexed
+        for(Hash hash : newlyMissing) {
+            Transaction arrived = ixi.findTransactionByHash(hash.toString());
+            if(arrived != null)
+                processMissingTransaction(arrived, hash);
         }
     }
 
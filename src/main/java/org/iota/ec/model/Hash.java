@@ -0,0 +1,78 @@
+package org.iota.ec.model;
+
+import java.util.Arrays;
+
+/**
+ * Compact representation of a transaction hash to be used as key in sets and maps instead of the tryte string. The 81
+ * trytes are packed into longs (5 bits per tryte) and the hash code is precomputed, so that the key takes up a fraction of
+ * the memory of a string and equality checks compare a few longs instead of 81 characters.
+ * */
+public final class Hash {
+
+    public static final int LENGTH = 81;
+
+    private static final String TRYTES = "9ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final int BITS_PER_TRYTE = 5, TRYTES_PER_LONG = 12;
+    private static final int[] VALUE_BY_CHAR = new int[128];
+
+    static {
+        Arrays.fill(VALUE_BY_CHAR, -1);
+        for(int value = 0; value < TRYTES.length(); value++)
+            VALUE_BY_CHAR[TRYTES.charAt(value)] = value;
+    }
+
+    private final long[] packed;
+    private final int hashCode;
+
+    private Hash(long[] packed) {
+        this.packed = packed;
+        this.hashCode = Arrays.hashCode(packed);
+    }
+
+    public static Hash of(String trytes) {
+        return of(trytes, 0);
+    }
+
+    /**
+     * @param offset Index of the first tryte of the hash, e.g. to parse one of the references of a Tangle ID.
+     * */
+    public static Hash of(String trytes, int offset) {
+        if(trytes.length() < offset + LENGTH)
+            throw new IllegalArgumentException("Not a hash, invalid length: " + trytes);
+        long[] packed = new long[(LENGTH + TRYTES_PER_LONG - 1) / TRYTES_PER_LONG];
+        for(int i = 0; i < LENGTH; i++) {
+            char tryte = trytes.charAt(offset + i);
+            int value = tryte < VALUE_BY_CHAR.length ? VALUE_BY_CHAR[tryte] : -1;
+            if(value < 0)
+                throw new IllegalArgumentException("Not a hash, invalid tryte '" + tryte + "': " + trytes);
+            packed[i / TRYTES_PER_LONG] |= (long) value << (BITS_PER_TRYTE * (i % TRYTES_PER_LONG));
+        }
+        return new Hash(packed);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof Hash))
+            return false;
+        Hash other = (Hash) o;
+        return hashCode == other.hashCode && Arrays.equals(packed, other.packed);
+    }
+
+    /**
+     * @return The hash as trytes. Allocates a new string, so it should only be used at the boundaries of the model.
+     * */
+    @Override
+    public String toString() {
+        char[] trytes = new char[LENGTH];
+        for(int i = 0; i < LENGTH; i++)
+            trytes[i] = TRYTES.charAt((int) (packed[i / TRYTES_PER_LONG] >>> (BITS_PER_TRYTE * (i % TRYTES_PER_LONG))) & 31);
+        return new String(trytes);
+    }
+}
@@ -1,53 +1,595 @@
 package org.iota.ec.model;
 
+import org.iota.ict.eee.Environment;
 import org.iota.ict.ixi.Ixi;
 import org.iota.ict.model.bundle.Bundle;
 import org.iota.ict.model.transaction.Transaction;
 import org.iota.ict.model.transaction.TransactionBuilder;
-import org.iota.ict.model.transfer.Transfer;
+import org.iota.ict.network.gossip.GossipEvent;
+import org.iota.ict.network.gossip.GossipListener;
+import org.iota.ict.utils.Constants;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class LedgerValidator {
+/**
+ * Validates Tangles and checks them for negative balances. If validation hits a missing transaction, all transactions
+ * waiting for it are indexed by the missing hash. They are not validated again until that transaction is received via
+ * gossip, at which point the {@link #addDependencyListener(Runnable) dependency listeners} are notified and the hash is
+ * logged as {@link #getDependenciesResolvedSince(long) resolved}.
+ *
+ * A validator is shared by all actors of a node, so validations do not lock each other out: the results of transfers
+ * and cones are kept in concurrent collections and the confirmed ledger state is guarded by a read-write lock, which is
+ * only held exclusively while the confirmed ledger state changes.
+ * */
+public class LedgerValidator implements GossipListener {
 
     protected final Ixi ixi;
 
     protected final Map<String, BigInteger> initialBalances;
-    protected final Map<String, String> dependencyByTransfer = new HashMap<>();
-    protected final Map<String, RuntimeException> invalidTransfers = new HashMap<>();
-    protected final Set<String> validTransfers = new HashSet<>();
+    protected final Map<Hash, Hash> dependencyByTransfer = new ConcurrentHashMap<>();
+    // least recently registered first, see evictDependenciesBeyondCapacity(Hash)
+    protected final Map<Hash, Set<Hash>> waitingTransfersByMissingHash = Collections.synchronizedMap(new LinkedHashMap<Hash, Set<Hash>>(16, 0.75f, true));
+    protected final Queue<Hash> arrivedDependencies = new ConcurrentLinkedQueue<>();
+    protected final VersionedLog<Hash> resolvedDependencyLog = new VersionedLog<>();
+    // guards the registration and resolution of missing transactions
+    private final Object dependencyLock = new Object();
+    private final List<Runnable> dependencyListeners = new CopyOnWriteArrayList<>();
+    protected final Map<Hash, RuntimeException> invalidTransfers = new ConcurrentHashMap<>();
+    protected final Set<Hash> validTransfers = ConcurrentHashMap.newKeySet();
+    // guards the confirmed ledger state below
+    protected final ReadWriteLock ledgerLock = new ReentrantReadWriteLock();
+    // in order of confirmation, see forgetConfirmedTransactionsNoLongerStored(int)
+    protected final Set<Hash> confirmedTransactions = new LinkedHashSet<>();
+    // confirmed transactions no longer stored by Ict, each with the transaction received last when it was found pruned
+    protected final Map<Hash, Hash> witnessByPrunedConfirmedTransaction = new LinkedHashMap<>();
+    private volatile Hash lastReceived = null;
+    protected final Map<String, BigInteger> confirmedBalanceChanges = new HashMap<>();
+    // initial balances plus confirmed balance changes, kept separately for fast balance checks
+    protected final BalanceMap confirmedBalances = new BalanceMap();
+    protected final Set<String> negativeConfirmedBalances = new HashSet<>();
+    protected volatile TransferVerifier transferVerifier = null;
+    protected final VersionedLog<String> addressChangeLog = new VersionedLog<>();
+    protected final Map<Hash, ConeBalance> coneBalanceByRoot = Collections.synchronizedMap(new LinkedHashMap<Hash, ConeBalance>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Hash, ConeBalance> eldest) {
+            return size() > CONE_BALANCE_CACHE_CAPACITY;
+        }
+    });
+
+    static final int CONE_BALANCE_CACHE_CAPACITY = 256;
+    static final int MAX_MISSING_TRANSACTIONS = 10000;
+    static final int MAX_WAITING_TRANSFERS = 100000;
+    public static final int UNLIMITED_PAST_CONE_SIZE = Integer.MAX_VALUE;
+    public static final double DEFAULT_CONFIRMATION_THRESHOLD = 0.95;
+    private static final Hash NULL_HASH = Hash.of(Transaction.NULL_TRANSACTION.hash);
+
+    protected volatile int maxPastConeSize = UNLIMITED_PAST_CONE_SIZE;
+    private volatile double confirmationThreshold = DEFAULT_CONFIRMATION_THRESHOLD;
 
+    /**
+     * The validator does not register itself as gossip listener. Its owner has to add it to the Ixi to notice arrivals of
+     * missing transactions and to {@link #shutdown()} it once it is no longer used.
+     * */
     LedgerValidator(Ixi ixi) {
         this.ixi = ixi;
-        validTransfers.add(Transaction.NULL_TRANSACTION.hash);
+        validTransfers.add(NULL_HASH);
+        confirmedTransactions.add(NULL_HASH);
         initialBalances = new HashMap<>();
     }
 
-    LedgerValidator(Ixi ixi, Map<String, BigInteger> initialBalances) {
+    /**
+     * @see #LedgerValidator(Ixi)
+     * */
+    public LedgerValidator(Ixi ixi, Map<String, BigInteger> initialBalances) {
         this.ixi = ixi;
-        validTransfers.add(Transaction.NULL_TRANSACTION.hash);
+        validTransfers.add(NULL_HASH);
+        confirmedTransactions.add(NULL_HASH);
         this.initialBalances = new HashMap<>(initialBalances);
+        for(Map.Entry<String, BigInteger> initialBalance : initialBalances.entrySet())
+            changeConfirmedBalance(initialBalance.getKey(), initialBalance.getValue());
+    }
+
+    /**
+     * Stops listening for arrivals of missing transactions.
+     * */
+    public void shutdown() {
+        ixi.removeListener(this);
+    }
+
+    /**
+     * Bounds the cost of validating a Tangle and calculating its balances, see docs/CONFIRMATION.md. Only the first
+     * unconfirmed transactions of a past cone (in breadth-first order starting at the root) are considered. All transactions
+     * beyond that limit are treated as part of the confirmed base: they are neither validated nor is their value counted.
+     * @param maxPastConeSize Maximum amount of transactions to consider per past cone or {@link #UNLIMITED_PAST_CONE_SIZE}.
+     * */
+    public void setMaxPastConeSize(int maxPastConeSize) {
+        if(maxPastConeSize < 1)
+            throw new IllegalArgumentException("'maxPastConeSize' must be positive.");
+        ledgerLock.writeLock().lock();
+        try {
+            this.maxPastConeSize = maxPastConeSize;
+            // cached cone balances might have been limited differently
+            coneBalanceByRoot.clear();
+        } finally {
+            ledgerLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The confirmed ledger state is shared by all actors using this validator, so all of them have to agree on when a
+     * transaction is confirmed.
+     * @param confirmationThreshold Cluster confidence above which a transaction and its past cone are collapsed into the
+     *                              confirmed ledger state. Validation does not go beyond confirmed transactions.
+     * */
+    public void setConfirmationThreshold(double confirmationThreshold) {
+        this.confirmationThreshold = confirmationThreshold;
+    }
+
+    public double getConfirmationThreshold() {
+        return confirmationThreshold;
+    }
+
+    /**
+     * @param transferVerifier Shared verifier whose results to use instead of verifying each transfer during validation.
+     * */
+    public void setTransferVerifier(TransferVerifier transferVerifier) {
+        this.transferVerifier = transferVerifier;
+    }
+
+    /**
+     * @param listener Called on the gossip thread whenever a transaction arrives which an incomplete Tangle was waiting for.
+     * */
+    public void addDependencyListener(Runnable listener) {
+        dependencyListeners.add(listener);
+    }
+
+    public void removeDependencyListener(Runnable listener) {
+        dependencyListeners.remove(listener);
+    }
+
+    @Override
+    public void onReceive(GossipEvent event) {
+        Hash hash = Hash.of(event.getTransaction().hash);
+        lastReceived = hash;
+        if(waitingTransfersByMissingHash.containsKey(hash))
+            onDependencyArrived(hash);
+    }
+
+    private void onDependencyArrived(Hash hash) {
+        arrivedDependencies.add(hash);
+        for(Runnable listener : dependencyListeners)
+            listener.run();
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return Constants.Environments.GOSSIP;
+    }
+
+    /**
+     * @return The current version of the resolved dependencies which increases whenever a missing transaction arrives.
+     * */
+    public long getDependencyVersion() {
+        resolveArrivedDependencies();
+        return resolvedDependencyLog.getVersion();
+    }
+
+    /**
+     * Allows users to retry exactly those Tangles which were incomplete because of a transaction that arrived in the meantime.
+     * Only arrivals not yet {@link #pollResolvedDependencies(Object) polled} by all registered readers are kept.
+     * @return Hashes of all previously missing transactions which arrived since that version or {@code null} if that
+     *         version is too old to tell.
+     * */
+    public Set<Hash> getDependenciesResolvedSince(long version) {
+        resolveArrivedDependencies();
+        return resolvedDependencyLog.getSince(version);
+    }
+
+    /**
+     * Registers a reader of the resolved dependencies (see {@link #pollResolvedDependencies(Object)}). Arrivals are only
+     * kept until all registered readers have polled them.
+     * */
+    void registerDependencyReader(Object reader) {
+        resolvedDependencyLog.register(reader);
+    }
+
+    /**
+     * @return Hashes of all previously missing transactions which arrived since the last poll of the reader.
+     * */
+    Set<Hash> pollResolvedDependencies(Object reader) {
+        resolveArrivedDependencies();
+        return resolvedDependencyLog.poll(reader);
+    }
+
+    /**
+     * Registers transactions as waiting for a missing transaction, so that they are not validated again before it arrives.
+     * @param waitingTransfers Transactions which cannot be validated without the missing transaction. Might be empty if only
+     *                         the arrival itself is of interest.
+     * */
+    protected void awaitDependency(String missingHash, Collection<Hash> waitingTransfers) {
+        Hash missing = Hash.of(missingHash);
+        synchronized (dependencyLock) {
+            Set<Hash> waiting = waitingTransfersByMissingHash.get(missing);
+            if(waiting == null) {
+                waiting = new HashSet<>();
+                waitingTransfersByMissingHash.put(missing, waiting);
+            }
+            waiting.addAll(waitingTransfers);
+            for(Hash transfer : waitingTransfers)
+                dependencyByTransfer.put(transfer, missing);
+            evictDependenciesBeyondCapacity(missing);
+        }
+        // the transaction might have been received before it was registered as missing
+        if(ixi.findTransactionByHash(missingHash) != null)
+            onDependencyArrived(missing);
+    }
+
+    /**
+     * Forgets the missing transactions registered least recently once too many transactions are missing or too many
+     * transfers are waiting. They are logged as resolved, so that readers validate their Tangles again instead of waiting
+     * for an arrival which is no longer announced. A transaction which is still missing is then simply registered again.
+     * @param registered The missing transaction just registered, which is kept.
+     * */
+    private void evictDependenciesBeyondCapacity(Hash registered) {
+        synchronized (waitingTransfersByMissingHash) {
+            Iterator<Map.Entry<Hash, Set<Hash>>> iterator = waitingTransfersByMissingHash.entrySet().iterator();
+            while ((waitingTransfersByMissingHash.size() > MAX_MISSING_TRANSACTIONS || dependencyByTransfer.size() > MAX_WAITING_TRANSFERS) && iterator.hasNext()) {
+                Map.Entry<Hash, Set<Hash>> eldest = iterator.next();
+                if(eldest.getKey().equals(registered))
+                    continue;
+                iterator.remove();
+                for(Hash transfer : eldest.getValue())
+                    dependencyByTransfer.remove(transfer, eldest.getKey());
+                resolvedDependencyLog.add(eldest.getKey());
+            }
+        }
+    }
+
+    private void resolveArrivedDependencies() {
+        synchronized (dependencyLock) {
+            Hash arrived;
+            while ((arrived = arrivedDependencies.poll()) != null) {
+                Set<Hash> waiting = waitingTransfersByMissingHash.remove(arrived);
+                if(waiting == null)
+                    continue;
+                for(Hash transfer : waiting)
+                    dependencyByTransfer.remove(transfer, arrived);
+                resolvedDependencyLog.add(arrived);
+            }
+        }
     }
 
     public void changeInitialBalance(String address, BigInteger toAdd) {
-        initialBalances.put(address, initialBalances.containsKey(address) ? initialBalances.get(address).add(toAdd) : toAdd);
+        ledgerLock.writeLock().lock();
+        try {
+            initialBalances.put(address, initialBalances.containsKey(address) ? initialBalances.get(address).add(toAdd) : toAdd);
+            changeConfirmedBalance(address, toAdd);
+            addressChangeLog.add(address);
+        } finally {
+            ledgerLock.writeLock().unlock();
+        }
+    }
+
+    private void changeConfirmedBalance(String address, BigInteger toAdd) {
+        confirmedBalances.add(address, toAdd);
+        if(confirmedBalances.get(address).signum() < 0)
+            negativeConfirmedBalances.add(address);
+        else
+            negativeConfirmedBalances.remove(address);
+    }
+
+    /**
+     * @return The current version of the ledger state which increases whenever the balance of any address changes.
+     * */
+    public long getLedgerVersion() {
+        return addressChangeLog.getVersion();
+    }
+
+    /**
+     * Allows users of a shared validator to invalidate results derived from balances which changed in the meantime. Only
+     * changes not yet {@link #pollChangedAddresses(Object) polled} by all registered readers are kept.
+     * @return All addresses whose initial or confirmed balance changed since that version or {@code null} if that version
+     *         is too old to tell.
+     * */
+    public Set<String> getAddressesChangedSince(long version) {
+        return addressChangeLog.getSince(version);
+    }
+
+    /**
+     * Registers a reader of the changed addresses (see {@link #pollChangedAddresses(Object)}). Changes are only kept until
+     * all registered readers have polled them.
+     * */
+    void registerLedgerReader(Object reader) {
+        addressChangeLog.register(reader);
+    }
+
+    /**
+     * @return All addresses whose initial or confirmed balance changed since the last poll of the reader.
+     * */
+    Set<String> pollChangedAddresses(Object reader) {
+        return addressChangeLog.poll(reader);
+    }
+
+    /**
+     * Collapses the transaction and its past cone into the confirmed ledger state. Confirmed transactions are considered
+     * valid without questioning their inputs (see docs/CONFIRMATION.md), their balance changes apply to every Tangle and
+     * validation as well as balance calculation stop at them.
+     * @param hash Hash of a transaction confirmed in the cluster.
+     * @return All addresses whose confirmed balance changed.
+     * @throws IncompleteTangleException If the past cone is not available completely. Nothing is confirmed in that case.
+     * */
+    public Set<String> confirm(String hash) {
+        Map<Hash, Transaction> newlyConfirmed;
+        ledgerLock.readLock().lock();
+        try {
+            newlyConfirmed = findUnconfirmedPastCone(hash);
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
+        if(newlyConfirmed.isEmpty())
+            return Collections.emptySet();
+
+        ledgerLock.writeLock().lock();
+        try {
+            Set<String> changedAddresses = new HashSet<>();
+            Set<Hash> newlyConfirmedIds = new HashSet<>();
+            for(Map.Entry<Hash, Transaction> entry : newlyConfirmed.entrySet()) {
+                Hash transactionId = entry.getKey();
+                Transaction transaction = entry.getValue();
+                // might have been confirmed by another actor in the meantime
+                if(!confirmedTransactions.add(transactionId))
+                    continue;
+                newlyConfirmedIds.add(transactionId);
+                // confirmed transactions do not have to be tracked as valid any longer
+                validTransfers.remove(transactionId);
+                if(!transaction.value.equals(BigInteger.ZERO)) {
+                    add(confirmedBalanceChanges, transaction.address(), transaction.value);
+                    changeConfirmedBalance(transaction.address(), transaction.value);
+                    changedAddresses.add(transaction.address());
+                }
+            }
+            // cached cone balances including transactions which are confirmed now would count them twice
+            synchronized (coneBalanceByRoot) {
+                for(Iterator<ConeBalance> iterator = coneBalanceByRoot.values().iterator(); iterator.hasNext(); )
+                    if(iterator.next().containsAny(newlyConfirmedIds))
+                        iterator.remove();
+            }
+            forgetConfirmedTransactionsNoLongerStored(2 * newlyConfirmedIds.size());
+            addressChangeLog.addAll(changedAddresses);
+            return changedAddresses;
+        } finally {
+            ledgerLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The unconfirmed transactions in the past cone by their hash, in breadth-first order.
+     * @throws IncompleteTangleException If the past cone is not available completely.
+     * */
+    private Map<Hash, Transaction> findUnconfirmedPastCone(String hash) {
+        Map<Hash, Transaction> unconfirmed = new LinkedHashMap<>();
+        Map<Transaction, Hash> ids = new IdentityHashMap<>();
+        LinkedList<Transaction> toTraverse = new LinkedList<>();
+        addToUnconfirmedPastCone(toTraverse, hash, ixi.findTransactionByHash(hash));
+        while (toTraverse.size() > 0) {
+            Transaction current = toTraverse.poll();
+            if(ids.containsKey(current))
+                continue;
+            Hash currentId = idOf(current, ids);
+            if(isConfirmed(currentId) || unconfirmed.containsKey(currentId))
+                continue;
+            unconfirmed.put(currentId, current);
+            addToUnconfirmedPastCone(toTraverse, current.branchHash(), current.getBranch());
+            addToUnconfirmedPastCone(toTraverse, current.trunkHash(), current.getTrunk());
+        }
+        return unconfirmed;
+    }
+
+    private void addToUnconfirmedPastCone(LinkedList<Transaction> toTraverse, String hash, Transaction transactionOrNull) {
+        if(transactionOrNull != null)
+            toTraverse.add(transactionOrNull);
+        else if(!isConfirmed(Hash.of(hash)))
+            throw new IncompleteTangleException(hash);
+    }
+
+    /**
+     * Packs the hash of each transaction only once per traversal, no matter how many approvers reference it. Ict hands
+     * out the same object for a transaction whenever it is referenced, so the memo is keyed by identity and its lookups
+     * do not have to read the hash at all.
+     * */
+    private static Hash idOf(Transaction transaction, Map<Transaction, Hash> ids) {
+        Hash id = ids.get(transaction);
+        if(id == null) {
+            id = Hash.of(transaction.hash);
+            ids.put(transaction, id);
+        }
+        return id;
+    }
+
+    /**
+     * Traversals stop at confirmed transactions, also if they are no longer stored by Ict. A confirmed transaction which
+     * Ict pruned therefore still has to be remembered as long as a stored transaction might reference it, i.e. as long as
+     * it is part of the confirmed frontier. Ict prunes the oldest transactions first and approvers arrive after the
+     * transactions they approve. Once the transaction received last when a confirmed transaction was found pruned is
+     * pruned as well, all approvers stored at that time are gone and the confirmed transaction is forgotten.
+     *
+     * Each call checks some confirmed transactions, starting with those confirmed first, so that the amount of confirmed
+     * transactions remembered is bounded by the capacity of the Ict storage while the cost is amortized over the
+     * confirmations.
+     * @param amountToCheck Amount of confirmed transactions to check.
+     * */
+    private void forgetConfirmedTransactionsNoLongerStored(int amountToCheck) {
+        Hash witness = lastReceived;
+        List<Hash> stillStored = new ArrayList<>();
+        Iterator<Hash> iterator = confirmedTransactions.iterator();
+        for(int i = 0; i < amountToCheck && iterator.hasNext(); i++) {
+            Hash confirmed = iterator.next();
+            iterator.remove();
+            if(confirmed.equals(NULL_HASH) || witness == null || isStored(confirmed))
+                stillStored.add(confirmed);
+            else
+                witnessByPrunedConfirmedTransaction.put(confirmed, witness);
+        }
+        // checked again after all others
+        confirmedTransactions.addAll(stillStored);
+
+        // witnesses are in order of arrival, so only the oldest ones can be pruned
+        Iterator<Map.Entry<Hash, Hash>> prunedIterator = witnessByPrunedConfirmedTransaction.entrySet().iterator();
+        Hash prunedWitness = null;
+        for(int i = 0; i < amountToCheck && prunedIterator.hasNext(); i++) {
+            Hash currentWitness = prunedIterator.next().getValue();
+            if(currentWitness != prunedWitness) {
+                if(isStored(currentWitness))
+                    break;
+                prunedWitness = currentWitness;
+            }
+            prunedIterator.remove();
+        }
+    }
+
+    private boolean isStored(Hash hash) {
+        return ixi.findTransactionByHash(hash.toString()) != null;
+    }
+
+    /**
+     * @return Whether the transaction is confirmed, including confirmed transactions Ict no longer stores.
+     * */
+    protected boolean isConfirmed(Hash hash) {
+        return confirmedTransactions.contains(hash) || witnessByPrunedConfirmedTransaction.containsKey(hash);
+    }
+
+    public boolean isConfirmed(String hash) {
+        ledgerLock.readLock().lock();
+        try {
+            return isConfirmed(Hash.of(hash));
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param initialBalanceChanges Changes to the initial balances specific to the caller.
+     * @return The balance of the address in the confirmed ledger state, including the initial balance.
+     * */
+    protected BigInteger confirmedBalanceOf(String address, Map<String, BigInteger> initialBalanceChanges) {
+        ledgerLock.readLock().lock();
+        try {
+            BigInteger balance = confirmedBalances.get(address);
+            return initialBalanceChanges.containsKey(address) ? balance.add(initialBalanceChanges.get(address)) : balance;
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
     }
 
     public boolean areTanglesCompatible(String hashA, String hashB, String hashC, String hashD) {
+        return areTanglesCompatible(hashA, hashB, hashC, hashD, Collections.<String, BigInteger>emptyMap());
+    }
+
+    /**
+     * @param initialBalanceChanges Changes to the initial balances which apply to this check only.
+     * @throws IncompleteTangleException If the Tangles are not available completely. Their validity is unknown in that case.
+     * */
+    public boolean areTanglesCompatible(String hashA, String hashB, String hashC, String hashD, Map<String, BigInteger> initialBalanceChanges) {
         Transaction refA = ixi.findTransactionByHash(hashA);
         Transaction refB = ixi.findTransactionByHash(hashB);
         Transaction refC = ixi.findTransactionByHash(hashC);
         Transaction refD = ixi.findTransactionByHash(hashD);
-        return isTangleSolid(merge(merge(refA, refB), merge(refC, refD)));
+        requireReference(hashA, refA);
+        requireReference(hashB, refB);
+        requireReference(hashC, refC);
+        requireReference(hashD, refD);
+        ledgerLock.readLock().lock();
+        try {
+            return isTangleValidIfComplete(merge(merge(refA, refB), merge(refC, refD))) && noNegativeBalanceInTangle(Arrays.asList(refA, refB, refC, refD), initialBalanceChanges);
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
     }
 
     public boolean areTanglesCompatible(String hashA, String hashB) {
+        return areTanglesCompatible(hashA, hashB, Collections.<String, BigInteger>emptyMap());
+    }
+
+    /**
+     * @param initialBalanceChanges Changes to the initial balances which apply to this check only.
+     * @throws IncompleteTangleException If the Tangle is not available completely. Its validity is unknown in that case.
+     * */
+    public boolean areTanglesCompatible(String hashA, String hashB, Map<String, BigInteger> initialBalanceChanges) {
+        Transaction refA = ixi.findTransactionByHash(hashA);
+        Transaction refB = ixi.findTransactionByHash(hashB);
+        requireReference(hashA, refA);
+        requireReference(hashB, refB);
+        ledgerLock.readLock().lock();
+        try {
+            return isTangleValidIfComplete(merge(refA, refB)) && noNegativeBalanceInTangle(Arrays.asList(refA, refB), initialBalanceChanges);
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return All addresses with unconfirmed negative value transactions in the past cone of the references. A valid Tangle
+     *         can only conflict with another one spending from one of these addresses. Other initial balances do not affect that.
+     * */
+    public Set<String> findSpentAddresses(String hashA, String hashB) {
         Transaction refA = ixi.findTransactionByHash(hashA);
         Transaction refB = ixi.findTransactionByHash(hashB);
         if(refA == null) throw new IncompleteTangleException(hashA);
         if(refB == null) throw new IncompleteTangleException(hashB);
-        return isTangleSolid(merge(refA, refB));
+
+        ledgerLock.readLock().lock();
+        try {
+            return findSpentAddresses(merge(refA, refB));
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
+    }
+
+    private Set<String> findSpentAddresses(Transaction root) {
+        Set<String> addresses = new HashSet<>();
+        LinkedList<Transaction> toTraverse = new LinkedList<>();
+        Set<Hash> traversed = new HashSet<>();
+        Map<Transaction, Hash> ids = new IdentityHashMap<>();
+        toTraverse.add(root);
+
+        while (toTraverse.size() > 0 && traversed.size() < maxPastConeSize) {
+            Transaction current = toTraverse.poll();
+            if(ids.containsKey(current))
+                continue;
+            Hash currentId = idOf(current, ids);
+            if(!isConfirmed(currentId) && traversed.add(currentId)) {
+                if(current.value.compareTo(BigInteger.ZERO) < 0)
+                    addresses.add(current.address());
+                addReferenceToTraverse(toTraverse, current.branchHash(), current.getBranch());
+                addReferenceToTraverse(toTraverse, current.trunkHash(), current.getTrunk());
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * A missing reference only makes the Tangle incomplete if it is not confirmed. Confirmed transactions pruned by Ict
+     * are part of the confirmed base like all other confirmed transactions.
+     * @throws IncompleteTangleException If the reference is missing and not confirmed.
+     * */
+    private void addReferenceToTraverse(List<Transaction> toTraverse, String hash, Transaction referenceOrNull) {
+        if(referenceOrNull != null)
+            toTraverse.add(referenceOrNull);
+        else if(!isConfirmed(Hash.of(hash)))
+            throw new IncompleteTangleException(hash);
+    }
+
+    private void requireReference(String hash, Transaction reference) {
+        if(reference == null) {
+            awaitDependency(hash, Collections.<Hash>emptySet());
+            throw new IncompleteTangleException(hash);
+        }
     }
 
     private Transaction merge(Transaction refA, Transaction refB) {
@@ -61,7 +603,13 @@ public class LedgerValidator {
     }
 
     public boolean isTangleSolid(String rootHash) {
-        return isTangleSolid(ixi.findTransactionByHash(rootHash));
+        Transaction root = ixi.findTransactionByHash(rootHash);
+        ledgerLock.readLock().lock();
+        try {
+            return isTangleSolid(root);
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
     }
 
     protected boolean isTangleSolid(Transaction root) {
@@ -69,45 +617,148 @@ public class LedgerValidator {
     }
 
     protected boolean noNegativeBalanceInTangle(Transaction root) {
-        Map<String, BigInteger> balances = calcBalances(root);
-        for (Map.Entry<String, BigInteger> entry : balances.entrySet()) {
-            if(entry.getValue().compareTo(BigInteger.ZERO) < 0) {
+        return noNegativeBalanceInTangle(Collections.singletonList(root), Collections.<String, BigInteger>emptyMap());
+    }
+
+    /**
+     * @param roots Transactions whose joint past cone forms the Tangle. Must be actual transactions (not merged ones).
+     * @param initialBalanceChanges Changes to the initial balances which apply to this check only.
+     * */
+    protected boolean noNegativeBalanceInTangle(List<Transaction> roots, Map<String, BigInteger> initialBalanceChanges) {
+        for(String address : negativeConfirmedBalances)
+            if(!initialBalanceChanges.containsKey(address))
                 return false;
+        for(String address : initialBalanceChanges.keySet())
+            if(confirmedBalanceOf(address, initialBalanceChanges).signum() < 0)
+                return false;
+        BalanceMap deltas = calcBalanceDeltas(roots).deltas;
+        for(int slot = 0; slot < deltas.capacity(); slot++)
+            if(deltas.addressAt(slot) != null && signumOfBalance(deltas, slot, initialBalanceChanges) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return The signum of the balance of the address in that slot after applying the deltas to the confirmed ledger state.
+     *         Calculated with {@code long} arithmetic unless any of the summands or the sum does not fit into a {@code long}.
+     * */
+    private int signumOfBalance(BalanceMap deltas, int slot, Map<String, BigInteger> initialBalanceChanges) {
+        String address = deltas.addressAt(slot);
+        int confirmedSlot = confirmedBalances.find(address);
+        BigInteger initialBalanceChange = initialBalanceChanges.isEmpty() ? null : initialBalanceChanges.get(address);
+        if(!deltas.overflowsAt(slot) && (confirmedSlot < 0 || !confirmedBalances.overflowsAt(confirmedSlot))
+                && (initialBalanceChange == null || BalanceMap.fitsIntoLong(initialBalanceChange))) {
+            try {
+                long balance = deltas.longAt(slot);
+                if(confirmedSlot >= 0)
+                    balance = Math.addExact(balance, confirmedBalances.longAt(confirmedSlot));
+                if(initialBalanceChange != null)
+                    balance = Math.addExact(balance, initialBalanceChange.longValue());
+                return Long.signum(balance);
+            } catch (ArithmeticException overflow) {
+                // fall back to BigInteger below
             }
         }
-        return true;
+        BigInteger balance = deltas.valueAt(slot);
+        if(confirmedSlot >= 0)
+            balance = balance.add(confirmedBalances.valueAt(confirmedSlot));
+        if(initialBalanceChange != null)
+            balance = balance.add(initialBalanceChange);
+        return balance.signum();
     }
 
     protected Map<String, BigInteger> calcBalances(Transaction root) {
+        BalanceMap balances = new BalanceMap(confirmedBalances);
+        balances.addAll(calcBalanceDeltas(Collections.singletonList(root)).deltas);
+        return balances.toMap();
+    }
 
-        Map<String, BigInteger> balances = new HashMap<>(initialBalances);
-        LinkedList<Transaction> toTraverse = new LinkedList<>();
-        Set<String> traversed = new HashSet<>();
-        toTraverse.add(root);
+    /**
+     * Calculates the balance changes in the joint past cone of the roots. The cone balance of each root is cached, so that
+     * the root with the largest cone serves as base and only the remaining part of the joint cone has to be traversed.
+     * */
+    private ConeBalance calcBalanceDeltas(List<Transaction> roots) {
+        ConeBalance largest = null;
+        for(Transaction root : roots) {
+            ConeBalance coneBalance = coneBalanceOf(root);
+            if(largest == null || coneBalance.size > largest.size)
+                largest = coneBalance;
+        }
+        return roots.size() == 1 ? largest : traverse(roots, largest);
+    }
+
+    private ConeBalance coneBalanceOf(Transaction root) {
+        Hash rootId = Hash.of(root.hash);
+        ConeBalance coneBalance = coneBalanceByRoot.get(rootId);
+        if(coneBalance == null) {
+            coneBalance = traverse(Collections.singletonList(root), null);
+            coneBalanceByRoot.put(rootId, coneBalance);
+        }
+        return coneBalance;
+    }
+
+    /**
+     * Traverses the joint past cone of the roots, except for the part covered by the base. Without base, the first
+     * transaction with a cached cone balance becomes the base, so that only the new part of the Tangle is traversed.
+     * */
+    private ConeBalance traverse(List<Transaction> roots, ConeBalance base) {
+        BalanceMap deltas = new BalanceMap();
+        List<Transaction> traversedWithValue = new LinkedList<>();
+        LinkedList<Transaction> toTraverse = new LinkedList<>(roots);
+        Set<Hash> traversed = new HashSet<>();
+        Map<Transaction, Hash> ids = new IdentityHashMap<>();
 
         while (toTraverse.size() > 0) {
+            // the rest of the past cone is beyond the limit and treated as part of the confirmed base
+            if(traversed.size() + (base == null ? 0 : base.size) >= maxPastConeSize)
+                break;
             Transaction current = toTraverse.poll();
+            Hash currentId = idOf(current, ids);
+            if(isConfirmed(currentId) || (base != null && base.contains(currentId)))
+                continue;
+
+            if(traversed.add(currentId)) {
+                ConeBalance cached = base == null ? coneBalanceByRoot.get(currentId) : null;
+                if(cached != null) {
+                    base = cached;
+                    // transactions traversed before are counted twice if they are also part of the base
+                    traversed.remove(currentId);
+                    for(Transaction covered : traversedWithValue)
+                        if(base.contains(idOf(covered, ids)))
+                            deltas.add(covered.address(), covered.value.negate());
+                    for(Iterator<Hash> iterator = traversed.iterator(); iterator.hasNext(); )
+                        if(base.contains(iterator.next()))
+                            iterator.remove();
+                    continue;
+                }
 
-            if(traversed.add(current.hash)) {
                 if(!current.value.equals(BigInteger.ZERO)) {
-                    String address = current.address();
-                    balances.put(address, balances.containsKey(address) ? balances.get(address).add(current.value) : current.value);
+                    deltas.add(current.address(), current.value);
+                    traversedWithValue.add(current);
                 }
 
-                Transaction branch = current.getBranch();
-                Transaction trunk = current.getTrunk();
-                if(branch == null || trunk == null)
-                    throw new IncompleteTangleException(branch == null ? current.branchHash() : current.trunkHash());
-                toTraverse.add(branch);
-                toTraverse.add(trunk);
+                addReferenceToTraverse(toTraverse, current.branchHash(), current.getBranch());
+                addReferenceToTraverse(toTraverse, current.trunkHash(), current.getTrunk());
             }
         }
 
-        return balances;
+        if(base != null)
+            deltas.addAll(base.deltas);
+        return new ConeBalance(base, traversed, deltas);
+    }
+
+    private static void add(Map<String, BigInteger> deltas, String address, BigInteger value) {
+        deltas.put(address, deltas.containsKey(address) ? deltas.get(address).add(value) : value);
     }
 
     public boolean isTangleValid(String rootHash) {
-        return isTangleValid(ixi.findTransactionByHash(rootHash));
+        Transaction root = ixi.findTransactionByHash(rootHash);
+        ledgerLock.readLock().lock();
+        try {
+            return isTangleValid(root);
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
     }
 
     protected boolean isTangleValid(Transaction root) {
@@ -124,56 +775,228 @@ public class LedgerValidator {
         }
     }
 
+    /**
+     * @throws IncompleteTangleException If the Tangle is not available completely, instead of considering it invalid.
+     * */
+    protected boolean isTangleValidIfComplete(Transaction root) {
+        try {
+            validateTangle(root.hash, root);
+            return true;
+        } catch (IncompleteTangleException incompleteTangleException) {
+            throw incompleteTangleException;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     protected void validateTangle(String rootHash) {
         validateTangle(rootHash, ixi.findTransactionByHash(rootHash));
     }
 
+    /**
+     * Validates the past cone of the root with an explicit stack, so that the depth of the Tangle is not limited by the
+     * call stack. Transactions are marked as valid in post-order, i.e. once their branch and trunk are valid. If a
+     * transaction is missing or invalid, all transactions on the path from the root to it are recorded as depending on the
+     * missing transaction or as invalid respectively before the exception is thrown.
+     *
+     * With a {@link #setMaxPastConeSize(int) limit}, a transaction whose cone was cut off by the limit is valid for this
+     * root only. It is not recorded as valid, since the part beyond the limit might be within the limit of another root.
+     * */
     protected void validateTangle(String rootHash, Transaction root) {
 
-        if(root == null)
-            throw new IncompleteTangleException(rootHash);
-        if(validTransfers.contains(rootHash))
-            return;
-        RuntimeException exception = invalidTransfers.get(rootHash);
-        if(exception != null)
-            throw exception;
+        resolveArrivedDependencies();
+        // the hash of each transaction is packed once, however often it is entered
+        Map<Transaction, Hash> ids = new IdentityHashMap<>();
+        Set<Hash> limitedPastCone = maxPastConeSize == UNLIMITED_PAST_CONE_SIZE ? null : findLimitedPastCone(rootHash, root, ids);
+        // transactions valid up to the limit, only known to be valid within this validation
+        Set<Hash> validWithinLimit = new HashSet<>();
+        Deque<ValidationFrame> stack = new ArrayDeque<>();
+        stack.push(new ValidationFrame(rootHash, root, ids));
 
-        checkForMissingDependency(root.hash);
         try {
-            if (root.isBundleHead && !(root.isBundleTail && root.value.compareTo(BigInteger.ZERO) == 0)) {
-                validateTransfer(root);
+            while (!stack.isEmpty()) {
+                ValidationFrame frame = stack.peek();
+                Transaction transaction = frame.transaction;
+                switch (frame.stage) {
+                    case ValidationFrame.ENTER:
+                        if(limitedPastCone != null && !limitedPastCone.contains(frame.id)) {
+                            // beyond the limit, treated as part of the confirmed base
+                            stack.pop();
+                            markTruncated(stack.peek());
+                            break;
+                        }
+                        // known to be valid or confirmed even if no longer stored
+                        if(validTransfers.contains(frame.id) || isConfirmed(frame.id)) {
+                            stack.pop();
+                            break;
+                        }
+                        if(transaction == null)
+                            throw new IncompleteTangleException(frame.hash);
+                        if(validWithinLimit.contains(frame.id)) {
+                            stack.pop();
+                            markTruncated(stack.peek());
+                            break;
+                        }
+                        RuntimeException exception = invalidTransfers.get(frame.id);
+                        if(exception != null)
+                            throw exception;
+                        checkForMissingDependency(frame.id);
+
+                        frame.stage = ValidationFrame.BRANCH;
+                        if (TransferVerifier.requiresVerification(transaction)) {
+                            validateTransfer(transaction);
+                        }
+                        stack.push(new ValidationFrame(transaction.branchHash(), transaction.getBranch(), ids));
+                        break;
+                    case ValidationFrame.BRANCH:
+                        frame.stage = ValidationFrame.TRUNK;
+                        stack.push(new ValidationFrame(transaction.trunkHash(), transaction.getTrunk(), ids));
+                        break;
+                    default:
+                        (frame.truncated ? validWithinLimit : validTransfers).add(frame.id);
+                        stack.pop();
+                        if(frame.truncated)
+                            markTruncated(stack.peek());
+                }
             }
-            validateTangle(root.branchHash(), root.getBranch());
-            validateTangle(root.trunkHash(), root.getTrunk());
-            validTransfers.add(root.hash);
         } catch (IncompleteTangleException incompleteTangleException) {
-            dependencyByTransfer.put(root.hash, incompleteTangleException.unavailableTransactionHash);
+            List<Hash> waitingTransfers = new ArrayList<>();
+            for(ValidationFrame frame : stack)
+                if(frame.stage != ValidationFrame.ENTER)
+                    waitingTransfers.add(frame.id);
+            awaitDependency(incompleteTangleException.unavailableTransactionHash, waitingTransfers);
             throw incompleteTangleException;
         } catch (RuntimeException e) {
-            invalidTransfers.put(root.hash, e);
+            for(ValidationFrame frame : stack)
+                if(frame.stage != ValidationFrame.ENTER)
+                    invalidTransfers.put(frame.id, e);
             throw e;
         }
     }
 
+    private static void markTruncated(ValidationFrame approverOrNull) {
+        if(approverOrNull != null)
+            approverOrNull.truncated = true;
+    }
+
+    /**
+     * @return The first {@link #maxPastConeSize} transactions in the past cone of the root (in breadth-first order) which
+     *         are neither known to be valid nor confirmed. Includes missing transactions.
+     * */
+    private Set<Hash> findLimitedPastCone(String rootHash, Transaction root, Map<Transaction, Hash> ids) {
+        Set<Hash> pastCone = new HashSet<>();
+        pastCone.add(root == null ? Hash.of(rootHash) : idOf(root, ids));
+        LinkedList<Transaction> toTraverse = new LinkedList<>();
+        if(root != null)
+            toTraverse.add(root);
+        while (toTraverse.size() > 0 && pastCone.size() < maxPastConeSize) {
+            Transaction current = toTraverse.poll();
+            addToLimitedPastCone(pastCone, toTraverse, ids, current.branchHash(), current.getBranch());
+            addToLimitedPastCone(pastCone, toTraverse, ids, current.trunkHash(), current.getTrunk());
+        }
+        return pastCone;
+    }
+
+    private void addToLimitedPastCone(Set<Hash> pastCone, LinkedList<Transaction> toTraverse, Map<Transaction, Hash> ids,
+                                      String hash, Transaction transactionOrNull) {
+        if(pastCone.size() >= maxPastConeSize)
+            return;
+        Hash id = transactionOrNull == null ? Hash.of(hash) : idOf(transactionOrNull, ids);
+        if(validTransfers.contains(id) || isConfirmed(id))
+            return;
+        if(pastCone.add(id) && transactionOrNull != null)
+            toTraverse.add(transactionOrNull);
+    }
+
     protected void validateTransfer(Transaction head) {
-        Transfer transfer = new Transfer(new Bundle(head));
-        if(!transfer.isValid()) {
-            throw transfer.areSignaturesValid()
-                    ? new InvalidTransferSumException(head.hash)
-                    : new InvalidSignatureException(head.hash);
-            // TODO make Transfer.isSumZero public in Ict repo
+        TransferVerifier.Result result = transferVerifier != null
+                ? transferVerifier.verify(head)
+                : TransferVerifier.check(new Bundle(head));
+        switch (result) {
+            case INVALID_SIGNATURE:
+                throw new InvalidSignatureException(head.hash);
+            case INVALID_SUM:
+                throw new InvalidTransferSumException(head.hash);
         }
     }
 
-    protected void checkForMissingDependency(String rootHash) {
-        if(dependencyByTransfer.containsKey(rootHash)) {
-            String dependency = dependencyByTransfer.get(rootHash);
-            if(ixi.findTransactionByHash(dependency) == null) {
-                throw new IncompleteTangleException(dependency);
+    /**
+     * Fails fast if the transaction is still waiting for a missing transaction. Dependencies are removed once the missing
+     * transaction is received, so there is no need to look it up again.
+     * */
+    protected void checkForMissingDependency(Hash rootHash) {
+        Hash dependency = dependencyByTransfer.get(rootHash);
+        if(dependency != null)
+            throw new IncompleteTangleException(dependency.toString());
+    }
+
+    /**
+     * The balance changes in the past cone of a transaction. To avoid copying large cones, a cone is stored as the cone
+     * of a base plus the transactions not covered by it. Chains of bases are flattened once they become too long.
+     * */
+    protected static class ConeBalance {
+        private static final int MAX_DEPTH = 16;
+
+        private final ConeBalance base;
+        private final Set<Hash> transactions;
+        private final BalanceMap deltas;
+        private final int size, depth;
+
+        private ConeBalance(ConeBalance base, Set<Hash> transactions, BalanceMap deltas) {
+            this.deltas = deltas;
+            this.size = transactions.size() + (base == null ? 0 : base.size);
+            if(base != null && base.depth >= MAX_DEPTH) {
+                Set<Hash> flattened = new HashSet<>(transactions);
+                for(ConeBalance current = base; current != null; current = current.base)
+                    flattened.addAll(current.transactions);
+                this.base = null;
+                this.transactions = flattened;
+                this.depth = 0;
             } else {
-                dependencyByTransfer.remove(rootHash);
+                this.base = base;
+                this.transactions = transactions;
+                this.depth = base == null ? 0 : base.depth + 1;
             }
         }
+
+        private boolean contains(Hash hash) {
+            for(ConeBalance current = this; current != null; current = current.base)
+                if(current.transactions.contains(hash))
+                    return true;
+            return false;
+        }
+
+        private boolean containsAny(Set<Hash> hashes) {
+            for(ConeBalance current = this; current != null; current = current.base) {
+                Set<Hash> smaller = current.transactions.size() < hashes.size() ? current.transactions : hashes;
+                Set<Hash> larger = smaller == hashes ? current.transactions : hashes;
+                for(Hash hash : smaller)
+                    if(larger.contains(hash))
+                        return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A transaction on the stack of {@link #validateTangle(String, Transaction)}. Frames beyond {@link #ENTER} have passed
+     * all checks preceding the validation of their cone.
+     * */
+    private static class ValidationFrame {
+        private static final int ENTER = 0, BRANCH = 1, TRUNK = 2;
+
+        private final String hash;
+        private final Hash id;
+        private final Transaction transaction;
+        private int stage = ENTER;
+        // whether part of the cone is beyond the limit
+        private boolean truncated = false;
+
+        private ValidationFrame(String hash, Transaction transaction, Map<Transaction, Hash> ids) {
+            this.hash = hash;
+            this.id = transaction == null ? Hash.of(hash) : idOf(transaction, ids);
+            this.transaction = transaction;
+        }
     }
 
     protected static class InvalidTransferException extends RuntimeException {
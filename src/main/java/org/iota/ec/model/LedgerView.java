@@ -0,0 +1,72 @@
+package org.iota.ec.model;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thin per-actor layer on top of a {@link LedgerValidator} which might be shared among several actors. Validity of
+ * transfers and balances of cones do not depend on the actor and are computed only once by the shared validator. Only the
+ * changes an actor applied to the initial balances on its own are kept here and passed along with each balance check.
+ * */
+class LedgerView {
+
+    private final LedgerValidator validator;
+    private final Map<String, BigInteger> initialBalanceChanges = new HashMap<>();
+
+    LedgerView(LedgerValidator validator) {
+        this.validator = validator;
+        validator.registerLedgerReader(this);
+        validator.registerDependencyReader(this);
+    }
+
+    LedgerValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Changes the initial balance for this view only.
+     * */
+    void changeInitialBalance(String address, BigInteger toAdd) {
+        initialBalanceChanges.put(address, initialBalanceChanges.getOrDefault(address, BigInteger.ZERO).add(toAdd));
+    }
+
+    boolean areTanglesCompatible(String hashA, String hashB) {
+        return validator.areTanglesCompatible(hashA, hashB, initialBalanceChanges);
+    }
+
+    boolean areTanglesCompatible(String hashA, String hashB, String hashC, String hashD) {
+        return validator.areTanglesCompatible(hashA, hashB, hashC, hashD, initialBalanceChanges);
+    }
+
+    Set<String> findSpentAddresses(String hashA, String hashB) {
+        return validator.findSpentAddresses(hashA, hashB);
+    }
+
+    /**
+     * @return All addresses whose initial or confirmed balance changed in the validator since the last call.
+     * */
+    Set<String> pollChangedAddresses() {
+        return validator.pollChangedAddresses(this);
+    }
+
+    /**
+     * @return Hashes of all previously missing transactions which arrived since the last call.
+     * */
+    Set<Hash> pollResolvedDependencies() {
+        return validator.pollResolvedDependencies(this);
+    }
+
+    boolean isConfirmedBalanceNegative(String address) {
+        return validator.confirmedBalanceOf(address, initialBalanceChanges).signum() < 0;
+    }
+
+    Set<String> confirm(String hash) {
+        return validator.confirm(hash);
+    }
+
+    boolean isConfirmed(String hash) {
+        return validator.isConfirmed(hash);
+    }
+}
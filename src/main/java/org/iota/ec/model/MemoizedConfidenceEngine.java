@@ -0,0 +1,112 @@
+package org.iota.ec.model;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates the recursive confidence definition of {@link ConfidenceCalculator} on numbered Tangles. Every set of
+ * remaining Tangles is represented as {@link BitSet} and the confidences of all Tangles within such a set are memoized,
+ * so each sub-problem {@code CONFIDENCE(X|set)} is solved only once no matter how many Tangles or recursion paths
+ * lead to it.
+ * */
+class MemoizedConfidenceEngine {
+
+    static final int DEFAULT_CACHE_CAPACITY = 50000;
+
+    private final BitSet[] conflicts;
+    private final double[] initialProbabilities;
+    private final Map<BitSet, double[]> confidencesBySubset;
+    private long deadline = Long.MAX_VALUE;
+
+    /**
+     * @param conflicts Adjacency of the conflict relation: {@code conflicts[i]} contains all Tangles in conflict with Tangle {@code i}.
+     * @param initialProbabilities Not necessarily normalized probability of each Tangle to confirm first.
+     * @param cacheCapacity Maximum amount of subsets whose confidences are memoized at the same time.
+     * */
+    MemoizedConfidenceEngine(BitSet[] conflicts, double[] initialProbabilities, final int cacheCapacity) {
+        assert conflicts.length == initialProbabilities.length;
+        this.conflicts = conflicts;
+        this.initialProbabilities = initialProbabilities;
+        this.confidencesBySubset = new LinkedHashMap<BitSet, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitSet, double[]> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * @param tangles The set of Tangles available to confirm.
+     * @param deadline Point in time (in milliseconds since epoch) after which to give up.
+     * @return The confidence of each Tangle in the set, indexed by Tangle. Tangles outside of the set have confidence 0.
+     * @throws DeadlineExceededException if the calculation could not be completed before the deadline.
+     * */
+    double[] confidencesIn(BitSet tangles, long deadline) {
+        this.deadline = deadline;
+        BitSet conflicting = withoutConflictFreeTangles(tangles);
+        double[] confidences = conflicting.isEmpty() ? new double[conflicts.length] : confidencesInConflicting(conflicting).clone();
+        for(int tangle = tangles.nextSetBit(0); tangle >= 0; tangle = tangles.nextSetBit(tangle+1))
+            if(!conflicting.get(tangle))
+                // Tangle is compatible with all others -> can be merged with any of them.
+                confidences[tangle] = 1;
+        return confidences;
+    }
+
+    /**
+     * CONFIDENCE(X|set) = SUM [over all Y in set compatible with X] P(Y|set) * CONFIDENCE(X|compatible(Y))
+     * @param tangles A set of Tangles in which every Tangle has at least one conflict.
+     * @return The memoized confidences of all Tangles in the set. Must not be modified.
+     * */
+    private double[] confidencesInConflicting(BitSet tangles) {
+        double[] cached = confidencesBySubset.get(tangles);
+        if(cached != null)
+            return cached;
+        if(System.currentTimeMillis() > deadline)
+            throw new DeadlineExceededException();
+
+        double sum = 0;
+        for(int tangle = tangles.nextSetBit(0); tangle >= 0; tangle = tangles.nextSetBit(tangle+1))
+            sum += initialProbabilities[tangle];
+
+        double[] confidences = new double[conflicts.length];
+        for(int confirmed = tangles.nextSetBit(0); confirmed >= 0; confirmed = tangles.nextSetBit(confirmed+1)) {
+            // normalize: sum of probabilities must be 1
+            double probability = sum > 0 ? initialProbabilities[confirmed] / sum : initialProbabilities[confirmed];
+            if(probability == 0)
+                continue;
+
+            BitSet compatible = (BitSet) tangles.clone();
+            compatible.andNot(conflicts[confirmed]);
+            BitSet remaining = withoutConflictFreeTangles(compatible);
+            double[] confidencesInRemaining = remaining.isEmpty() ? null : confidencesInConflicting(remaining);
+
+            for(int tangle = compatible.nextSetBit(0); tangle >= 0; tangle = compatible.nextSetBit(tangle+1))
+                confidences[tangle] += probability * (remaining.get(tangle) ? confidencesInRemaining[tangle] : 1);
+        }
+
+        confidencesBySubset.put(tangles, confidences);
+        return confidences;
+    }
+
+    /**
+     * @param tangles Set of Tangles to filter.
+     * @return A new set with only those Tangles which are in conflict with at least one other Tangle of the set.
+     * */
+    private BitSet withoutConflictFreeTangles(BitSet tangles) {
+        BitSet conflicting = new BitSet(conflicts.length);
+        for(int tangle = tangles.nextSetBit(0); tangle >= 0; tangle = tangles.nextSetBit(tangle+1))
+            if(conflicts[tangle].intersects(tangles))
+                conflicting.set(tangle);
+        return conflicting;
+    }
+
+    /**
+     * Signals that the exact calculation takes longer than permitted. Already memoized sub-problems remain cached.
+     * */
+    static class DeadlineExceededException extends RuntimeException {
+        DeadlineExceededException() {
+            super("Deadline exceeded before confidences could be calculated.");
+        }
+    }
+}
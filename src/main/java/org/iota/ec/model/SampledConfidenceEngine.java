@@ -0,0 +1,165 @@
+package org.iota.ec.model;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Estimates the confidences defined in {@link ConfidenceCalculator} by simulating the underlying random process: pick
+ * a Tangle with its initial probability, let it confirm, drop all Tangles it conflicts with and repeat until every
+ * Tangle is either confirmed or dropped. The relative frequency with which a Tangle confirms converges towards its
+ * confidence. In contrast to {@link MemoizedConfidenceEngine} the cost does not grow exponentially with the amount of
+ * Tangles, in exchange the results are only estimates within a confidence interval.
+ *
+ * The remaining Tangles are tracked as bits in a {@code long[]}, the conflicts are stored as compressed sparse rows so
+ * that each step of a simulation only visits the actual conflicts of a Tangle.
+ * */
+class SampledConfidenceEngine {
+
+    /**
+     * z-score of the 95% confidence intervals reported by {@link #errorOf(int)}.
+     * */
+    static final double Z_SCORE = 1.96;
+    static final int MIN_SAMPLES = 1024;
+    private static final int BATCH_SIZE = 256;
+
+    private final int[] conflictOffsets;
+    private final int[] conflicts;
+    private final double[] initialProbabilities;
+    private final SplittableRandom random;
+
+    private final long[] remaining;
+    private final long[] confirmations;
+    private long samples = 0;
+
+    /**
+     * @param conflicts Adjacency of the conflict relation: {@code conflicts[i]} contains all Tangles in conflict with Tangle {@code i}.
+     * @param initialProbabilities Not necessarily normalized probability of each Tangle to confirm first.
+     * @param random Source of randomness for the simulation.
+     * */
+    SampledConfidenceEngine(BitSet[] conflicts, double[] initialProbabilities, SplittableRandom random) {
+        assert conflicts.length == initialProbabilities.length;
+        int words = (conflicts.length + 63) >>> 6;
+        int[][] compressedSparseRows = ConflictGraph.toCompressedSparseRows(conflicts);
+        this.conflictOffsets = compressedSparseRows[0];
+        this.conflicts = compressedSparseRows[1];
+        this.initialProbabilities = initialProbabilities;
+        this.random = random;
+        this.remaining = new long[words];
+        this.confirmations = new long[conflicts.length];
+    }
+
+    /**
+     * Simulates the random process in batches until the error of every Tangle is within the error bound or the
+     * deadline has passed. At least {@link #MIN_SAMPLES} simulations are run in any case.
+     * @param tangles The set of Tangles available to confirm. Must be the same in consecutive calls.
+     * @param errorBound Maximum error (see {@link #errorOf(int)}) acceptable for every Tangle.
+     * @param deadline Point in time (in milliseconds since epoch) after which to stop simulating.
+     * */
+    void sample(BitSet tangles, double errorBound, long deadline) {
+        long[] tangleWords = toWords(tangles, remaining.length);
+        do {
+            for(int i = 0; i < BATCH_SIZE; i++)
+                simulate(tangleWords);
+            samples += BATCH_SIZE;
+        } while (samples < MIN_SAMPLES || (maxError(tangles) > errorBound && System.currentTimeMillis() < deadline));
+    }
+
+    /**
+     * Runs a single simulation of the random process. Does not allocate any memory.
+     * */
+    private void simulate(long[] tangles) {
+        System.arraycopy(tangles, 0, remaining, 0, remaining.length);
+        while (true) {
+            double sum = 0;
+            for(int w = 0; w < remaining.length; w++) {
+                for(long word = remaining[w]; word != 0; word &= word - 1) {
+                    int tangle = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if(hasRemainingConflict(tangle)) {
+                        sum += initialProbabilities[tangle];
+                    } else {
+                        // Tangle is compatible with all others -> will confirm in any case.
+                        confirmations[tangle]++;
+                        remaining[w] &= ~(1L << tangle);
+                    }
+                }
+            }
+            if(sum <= 0)
+                return;
+
+            int confirmed = pick(sum * random.nextDouble());
+            confirmations[confirmed]++;
+            for(int i = conflictOffsets[confirmed]; i < conflictOffsets[confirmed+1]; i++)
+                remaining[conflicts[i] >>> 6] &= ~(1L << conflicts[i]);
+            remaining[confirmed >>> 6] &= ~(1L << confirmed);
+        }
+    }
+
+    /**
+     * @param threshold Random number within [0, sum of initial probabilities of all remaining Tangles).
+     * @return The remaining Tangle at which the accumulated initial probabilities exceed the threshold.
+     * */
+    private int pick(double threshold) {
+        int last = -1;
+        double accumulated = 0;
+        for(int w = 0; w < remaining.length; w++) {
+            for(long word = remaining[w]; word != 0; word &= word - 1) {
+                int tangle = (w << 6) + Long.numberOfTrailingZeros(word);
+                if(initialProbabilities[tangle] <= 0)
+                    continue;
+                accumulated += initialProbabilities[tangle];
+                if(accumulated > threshold)
+                    return tangle;
+                last = tangle;
+            }
+        }
+        // only reachable through rounding errors
+        return last;
+    }
+
+    /**
+     * @return The estimated confidence of the Tangle. Tangles outside of the sampled set have confidence 0.
+     * */
+    double confidenceOf(int tangle) {
+        return samples == 0 ? 0 : (double) confirmations[tangle] / samples;
+    }
+
+    /**
+     * @return Maximum deviation of {@link #confidenceOf(int)} from the actual confidence with 95% certainty. Derived
+     *         from the Wilson score interval which, unlike the normal approximation, does not collapse for estimates of 0 or 1.
+     * */
+    double errorOf(int tangle) {
+        if(samples == 0)
+            return 1;
+        double n = samples;
+        double estimate = confirmations[tangle] / n;
+        double z2 = Z_SCORE * Z_SCORE;
+        double center = (estimate + z2 / (2 * n)) / (1 + z2 / n);
+        double halfWidth = Z_SCORE / (1 + z2 / n) * Math.sqrt(estimate * (1 - estimate) / n + z2 / (4 * n * n));
+        return Math.max(estimate - (center - halfWidth), center + halfWidth - estimate);
+    }
+
+    long getSamples() {
+        return samples;
+    }
+
+    private double maxError(BitSet tangles) {
+        double maxError = 0;
+        for(int tangle = tangles.nextSetBit(0); tangle >= 0; tangle = tangles.nextSetBit(tangle+1))
+            maxError = Math.max(maxError, errorOf(tangle));
+        return maxError;
+    }
+
+    private boolean hasRemainingConflict(int tangle) {
+        for(int i = conflictOffsets[tangle]; i < conflictOffsets[tangle+1]; i++)
+            if((remaining[conflicts[i] >>> 6] & (1L << conflicts[i])) != 0)
+                return true;
+        return false;
+    }
+
+    private static long[] toWords(BitSet bitSet, int words) {
+        long[] array = new long[words];
+        long[] used = bitSet.toLongArray();
+        System.arraycopy(used, 0, array, 0, Math.min(used.length, words));
+        return array;
+    }
+}
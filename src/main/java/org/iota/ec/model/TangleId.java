@@ -0,0 +1,54 @@
+package org.iota.ec.model;
+
+/**
+ * Compact representation of a Tangle ID (see {@link EconomicActor#tangleID(String, String)}) to be used as key in sets and
+ * maps instead of the 162 tryte string. Gives access to both references without building substrings.
+ * */
+public final class TangleId {
+
+    private final Hash reference1, reference2;
+    private final int hashCode;
+
+    /**
+     * @param tangle Tangle ID as returned by {@link EconomicActor#tangleID(String, String)}.
+     * */
+    public static TangleId of(String tangle) {
+        if(tangle.length() != 2 * Hash.LENGTH)
+            throw new IllegalArgumentException("Not a tangle, invalid length: " + tangle);
+        return new TangleId(Hash.of(tangle, 0), Hash.of(tangle, Hash.LENGTH));
+    }
+
+    private TangleId(Hash reference1, Hash reference2) {
+        this.reference1 = reference1;
+        this.reference2 = reference2;
+        this.hashCode = 31 * reference1.hashCode() + reference2.hashCode();
+    }
+
+    public Hash getReference1() {
+        return reference1;
+    }
+
+    public Hash getReference2() {
+        return reference2;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof TangleId))
+            return false;
+        TangleId other = (TangleId) o;
+        return hashCode == other.hashCode && reference1.equals(other.reference1) && reference2.equals(other.reference2);
+    }
+
+    @Override
+    public String toString() {
+        return reference1.toString() + reference2.toString();
+    }
+}
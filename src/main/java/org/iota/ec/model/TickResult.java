@@ -0,0 +1,118 @@
+package org.iota.ec.model;
+
+import java.util.*;
+
+/**
+ * Summarizes a single {@link AutonomousEconomicActor#tick(Collection, long) tick}: which Tangles were evaluated, for which
+ * of them markers were issued and which Tangles had to be skipped, e.g. because the time budget was exhausted. Skipped
+ * Tangles are carried over and considered first in the next tick. Tangles are only converted to their string IDs when
+ * requested through the getters.
+ * */
+public class TickResult {
+
+    /**
+     * The stage of a tick at which a Tangle was skipped.
+     * */
+    public enum Skip {
+        /** The Tangle could not be validated in time. */
+        VALIDATION,
+        /** The Tangle could not be checked for conflicts with all other Tangles in time. */
+        CONFLICT_DETECTION,
+        /** The confidence of the Tangle could not be estimated precisely enough in time. */
+        NOT_CONVERGED,
+        /** The confidence was calculated but there was no time left to issue the marker, or the Tangle spends from an
+         *  address spent from by a Tangle skipped at {@link #CONFLICT_DETECTION}. */
+        PUBLICATION
+    }
+
+    private final long budget;
+    private long duration;
+    private final Set<TangleId> evaluated = new HashSet<>();
+    private final Set<TangleId> published = new HashSet<>();
+    private final Map<TangleId, Skip> skipped = new HashMap<>();
+
+    TickResult(long budget) {
+        this.budget = budget;
+    }
+
+    void evaluated(TangleId tangle) {
+        evaluated.add(tangle);
+    }
+
+    void published(TangleId tangle) {
+        published.add(tangle);
+    }
+
+    void skipped(TangleId tangle, Skip stage) {
+        skipped.put(tangle, stage);
+    }
+
+    Map<TangleId, Skip> getSkippedTangles() {
+        return skipped;
+    }
+
+    void finish(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return The time budget in milliseconds the tick was given. {@link Long#MAX_VALUE} if unlimited.
+     * */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The time in milliseconds the tick actually took.
+     * */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return All Tangles whose confidence was calculated in this tick.
+     * */
+    public Set<String> getEvaluated() {
+        return toStrings(evaluated);
+    }
+
+    /**
+     * @return All Tangles for which a new marker was issued in this tick.
+     * */
+    public Set<String> getPublished() {
+        return toStrings(published);
+    }
+
+    /**
+     * @return All skipped Tangles mapped to the stage at which they were skipped.
+     * */
+    public Map<String, Skip> getSkipped() {
+        Map<String, Skip> skippedByID = new HashMap<>();
+        for(Map.Entry<TangleId, Skip> entry : skipped.entrySet())
+            skippedByID.put(entry.getKey().toString(), entry.getValue());
+        return Collections.unmodifiableMap(skippedByID);
+    }
+
+    /**
+     * @return Whether all Tangles were processed completely.
+     * */
+    public boolean isComplete() {
+        return skipped.isEmpty();
+    }
+
+    private static Set<String> toStrings(Set<TangleId> tangles) {
+        Set<String> ids = new HashSet<>();
+        for(TangleId tangle : tangles)
+            ids.add(tangle.toString());
+        return Collections.unmodifiableSet(ids);
+    }
+
+    @Override
+    public String toString() {
+        Map<Skip, Integer> skippedByStage = new EnumMap<>(Skip.class);
+        for(Skip stage : skipped.values())
+            skippedByStage.put(stage, skippedByStage.getOrDefault(stage, 0) + 1);
+        return "evaluated " + evaluated.size() + " tangles in " + duration + "ms (budget: " + (budget == Long.MAX_VALUE ? "unlimited" : budget + "ms")
+                + "), published " + published.size() + " markers, skipped " + skippedByStage;
+    }
+}
@@ -0,0 +1,143 @@
+package org.iota.ec.model;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense numbers to transaction hashes, so that sets of transactions can be stored as {@link CompressedBitmap}.
+ * Shared by all actors of a node (see {@link EconomicCluster#getTransactionNumbering()}), so each hash is stored only
+ * once no matter how many past cones contain it.
+ *
+ * Numbers are assigned consecutively. {@link #release(int) Released} numbers are reassigned before new ones, so the
+ * numbers stay dense and the amount of numbers is bounded by the amount of transactions numbered at the same time. A
+ * number must only be released once no set contains it any longer, see {@link EconomicCluster}.
+ * */
+public class TransactionNumbering {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // open addressing with linear probing, numbers[slot] belongs to hashes[slot]
+    private Hash[] hashes = new Hash[DEFAULT_CAPACITY];
+    private int[] numbers = new int[DEFAULT_CAPACITY];
+    private int size = 0;
+    // hashByNumber[number] is the hash the number is assigned to or null if the number is free
+    private Hash[] hashByNumber = new Hash[DEFAULT_CAPACITY];
+    private int amountOfNumbers = 0;
+    // released numbers to reassign, used as stack
+    private int[] freeNumbers = new int[DEFAULT_CAPACITY];
+    private int amountOfFreeNumbers = 0;
+
+    /**
+     * @return The number of the hash. A new number is assigned if the hash has none yet.
+     * */
+    synchronized int numberOf(Hash hash) {
+        int slot = slotOf(hash);
+        if(hashes[slot] != null)
+            return numbers[slot];
+        if((size + 1) * 2 > hashes.length) {
+            resize(hashes.length * 2);
+            slot = slotOf(hash);
+        }
+        int number = amountOfFreeNumbers > 0 ? freeNumbers[--amountOfFreeNumbers] : amountOfNumbers++;
+        if(number == hashByNumber.length)
+            hashByNumber = Arrays.copyOf(hashByNumber, hashByNumber.length * 2);
+        hashByNumber[number] = hash;
+        hashes[slot] = hash;
+        numbers[slot] = number;
+        size++;
+        return number;
+    }
+
+    /**
+     * @return The hash the number is assigned to or {@code null} if it is not assigned.
+     * */
+    synchronized Hash hashOf(int number) {
+        return number < 0 || number >= amountOfNumbers ? null : hashByNumber[number];
+    }
+
+    /**
+     * Frees the number, so that it can be assigned to another hash. Its current hash gets a new number if it is numbered
+     * again.
+     * */
+    synchronized void release(int number) {
+        Hash hash = hashOf(number);
+        if(hash == null)
+            return;
+        hashByNumber[number] = null;
+        removeSlot(slotOf(hash));
+        size--;
+        if(amountOfFreeNumbers == freeNumbers.length)
+            freeNumbers = Arrays.copyOf(freeNumbers, freeNumbers.length * 2);
+        freeNumbers[amountOfFreeNumbers++] = number;
+    }
+
+    /**
+     * @return Upper bound (exclusive) of all numbers assigned so far.
+     * */
+    synchronized int getAmountOfNumbers() {
+        return amountOfNumbers;
+    }
+
+    /**
+     * @return The number of the hash or {@code -1} if no number has been assigned to it.
+     * */
+    synchronized int find(Hash hash) {
+        int slot = slotOf(hash);
+        return hashes[slot] == null ? -1 : numbers[slot];
+    }
+
+    /**
+     * @return The amount of hashes numbered right now.
+     * */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The slot of the hash or the empty slot where it would be inserted.
+     * */
+    private int slotOf(Hash hash) {
+        int mask = hashes.length - 1;
+        int slot = spread(hash.hashCode()) & mask;
+        while (hashes[slot] != null && !hashes[slot].equals(hash))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Empties the slot and moves subsequent entries of the same probe sequence back, so that lookups do not stop early.
+     * */
+    private void removeSlot(int slot) {
+        int mask = hashes.length - 1;
+        hashes[slot] = null;
+        for(int next = (slot + 1) & mask; hashes[next] != null; next = (next + 1) & mask) {
+            int home = spread(hashes[next].hashCode()) & mask;
+            // the entry can move back unless its home lies cyclically within (slot, next]
+            boolean homeBetween = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if(homeBetween)
+                continue;
+            hashes[slot] = hashes[next];
+            numbers[slot] = numbers[next];
+            hashes[next] = null;
+            slot = next;
+        }
+    }
+
+    private void resize(int capacity) {
+        Hash[] oldHashes = hashes;
+        int[] oldNumbers = numbers;
+        hashes = new Hash[capacity];
+        numbers = new int[capacity];
+        for(int oldSlot = 0; oldSlot < oldHashes.length; oldSlot++) {
+            if(oldHashes[oldSlot] == null)
+                continue;
+            int slot = slotOf(oldHashes[oldSlot]);
+            hashes[slot] = oldHashes[oldSlot];
+            numbers[slot] = oldNumbers[oldSlot];
+        }
+    }
+
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
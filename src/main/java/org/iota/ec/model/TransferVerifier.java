@@ -0,0 +1,154 @@
+package org.iota.ec.model;
+
+import org.iota.ict.model.bundle.Bundle;
+import org.iota.ict.model.transaction.Transaction;
+import org.iota.ict.model.transfer.Transfer;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the conditions of a transfer which do not depend on any past cone (authenticated spends and consistent changes,
+ * see docs/CONFIRMATION.md) ahead of validation. Bundle heads received via gossip are {@link #offer(Transaction) offered}
+ * and verified on a pool of worker threads. The results are shared among all {@link LedgerValidator}s, so that
+ * validating a cone only has to look up the result of each transfer.
+ * */
+public class TransferVerifier {
+
+    public enum Result {
+        VALID, INVALID_SIGNATURE, INVALID_SUM
+    }
+
+    public static final int DEFAULT_CACHE_CAPACITY = 100000;
+    private static final int MAX_INCOMPLETE_BUNDLES = 10000;
+
+    private final ExecutorService executor;
+    private final Map<String, Result> resultByHead;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<String, Transaction> incompleteHeadByBundleHash;
+
+    /**
+     * @param workers Amount of threads verifying transfers in parallel.
+     * @param cacheCapacity Maximum amount of results to keep. The least recently used results are evicted first.
+     * */
+    public TransferVerifier(int workers, final int cacheCapacity) {
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EC.ixi-verifier-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.resultByHead = Collections.synchronizedMap(new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > cacheCapacity;
+            }
+        });
+        this.incompleteHeadByBundleHash = Collections.synchronizedMap(new LinkedHashMap<String, Transaction>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Transaction> eldest) {
+                return size() > MAX_INCOMPLETE_BUNDLES;
+            }
+        });
+    }
+
+    /**
+     * Schedules the verification of the transfer the transaction belongs to. Bundle heads of incomplete bundles are
+     * remembered and verified once the bundle tail arrives. Must return quickly since it is called on the gossip thread.
+     * */
+    public void offer(Transaction transaction) {
+        if(requiresVerification(transaction)) {
+            schedule(transaction);
+        } else if(transaction.isBundleTail) {
+            Transaction head = incompleteHeadByBundleHash.remove(transaction.bundleHash());
+            if(head != null)
+                schedule(head);
+        }
+    }
+
+    private void schedule(final Transaction head) {
+        if(executor.isShutdown() || resultByHead.containsKey(head.hash) || !inProgress.add(head.hash))
+            return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean parked = false;
+                try {
+                    Bundle bundle = new Bundle(head);
+                    if(bundle.isComplete())
+                        resultByHead.put(head.hash, check(bundle));
+                    else {
+                        incompleteHeadByBundleHash.put(head.bundleHash(), head);
+                        parked = true;
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    inProgress.remove(head.hash);
+                }
+                if(parked)
+                    retryIfTailArrived(head);
+            }
+        });
+    }
+
+    /**
+     * The tail might have arrived after the bundle was found incomplete but before the head was parked, in which case it
+     * either did not find the head or could not schedule it while still in progress. Since the head is no longer in
+     * progress, a tail arriving from now on will find and schedule it.
+     * */
+    private void retryIfTailArrived(Transaction head) {
+        try {
+            if(!new Bundle(head).isComplete())
+                return;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return;
+        }
+        incompleteHeadByBundleHash.remove(head.bundleHash(), head);
+        schedule(head);
+    }
+
+    /**
+     * @return The result of the transfer, verified synchronously if it has not been verified yet.
+     * */
+    public Result verify(Transaction head) {
+        Result result = resultByHead.get(head.hash);
+        if(result == null) {
+            result = check(new Bundle(head));
+            resultByHead.put(head.hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The result of the transfer if already verified, otherwise {@code null}.
+     * */
+    public Result getResult(String headHash) {
+        return resultByHead.get(headHash);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static Result check(Bundle bundle) {
+        Transfer transfer = new Transfer(bundle);
+        if(transfer.isValid())
+            return Result.VALID;
+        // TODO make Transfer.isSumZero public in Ict repo
+        return transfer.areSignaturesValid() ? Result.INVALID_SUM : Result.INVALID_SIGNATURE;
+    }
+
+    /**
+     * @return Whether the bundle head has to be verified as transfer (see {@link LedgerValidator#validateTangle(String, Transaction)}).
+     * */
+    static boolean requiresVerification(Transaction head) {
+        return head.isBundleHead && !(head.isBundleTail && head.value.compareTo(BigInteger.ZERO) == 0);
+    }
+}
@@ -8,81 +8,419 @@ import org.iota.ict.utils.Trytes;
 import org.iota.ict.utils.crypto.MerkleTree;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
 /**
  * Monitors an economic actor by following its markers. The passively-reading counter-part to {@link ControlledEconomicActor}.
+ *
+ * Past cones are stored as {@link CompressedBitmap}s of transaction numbers assigned by a {@link TransactionNumbering}
+ * shared among all actors of a node. Besides the past cone of each marked Tangle, the actor keeps the union of all of
+ * them, so that transactions which are not referenced at all are rejected after a single hash probe.
+ *
+ * Past cones are marked iteratively. Only a limited amount of transactions is marked right away (see
+ * {@link #setInlineMarkingBudget(int)}), the rest is marked in chunks through {@link #continueMarking(int)}. Until then,
+ * a marked Tangle references only part of its past cone.
+ *
+ * A marked Tangle whose past cone includes both references of an older, completely marked Tangle of this actor approves
+ * everything the older one approves (indirect approval through a chain of markers, see docs/CONFIRMATION.md). The older
+ * past cone is inherited by reference instead of being traversed again. Once the older Tangle is superseded by a newer
+ * marker which is at least as confident and the older one is not inherited by any other Tangle, it is released and its
+ * past cone is taken over by the newer one. A less confident newer marker keeps inheriting by reference, so that the
+ * transactions keep the higher confidence of the older marker.
+ *
+ * The confidence into a transaction is that of the most confident marked Tangle approving it. The actor indexes that
+ * Tangle by transaction number, so that a confidence lookup is a single array access. The index is updated when
+ * transactions are approved, when a past cone is inherited or taken over and when the confidence of a marked Tangle
+ * changes. Only the latter two have to visit the past cone of the Tangle, which is a bitmap iteration.
  * */
 public class TrustedEconomicActor extends EconomicActor {
 
-    protected List<SubTangle> subTanglesOrderedByDescendingConfidence = new LinkedList<>();
+    public static final int UNLIMITED_MARKING_BUDGET = Integer.MAX_VALUE;
+    private static final int DEFAULT_APPROVER_INDEX_CAPACITY = 1024;
+
+    protected List<SubTangle> subTanglesOrderedByDescendingConfidence = new ArrayList<>();
+    protected final Map<String, SubTangle> subTanglesByID = new HashMap<>();
+    protected final TransactionNumbering numbering;
+    // union of the past cones of all marked Tangles
+    protected final CompressedBitmap referenced = new CompressedBitmap();
+    // most confident marked Tangle approving each transaction, indexed by transaction number
+    private SubTangle[] mostConfidentApproverByNumber = new SubTangle[DEFAULT_APPROVER_INDEX_CAPACITY];
+    protected final Map<Integer, List<SubTangle>> subTanglesByMissingTransaction = new HashMap<>();
+    protected final Map<Integer, List<SubTangle>> subTanglesByReference = new HashMap<>();
+    protected final Set<SubTangle> subTanglesWithPendingMarking = new LinkedHashSet<>();
+    // missing transactions not yet polled by the cluster, see pollNewlyMissingTransactions()
+    protected final List<Hash> newlyMissingTransactions = new ArrayList<>();
+    // released marked Tangles not yet polled by the cluster, see pollReleasedTangles()
+    protected final List<String> releasedTangles = new ArrayList<>();
+    // numbers of the transactions probed during the current marking call, see numberOf(Transaction)
+    private final Map<Transaction, Integer> numberByProbedTransaction = new IdentityHashMap<>();
     protected double trust;
+    protected int maxPastConeSize = LedgerValidator.UNLIMITED_PAST_CONE_SIZE;
+    protected int inlineMarkingBudget = UNLIMITED_MARKING_BUDGET;
 
     public TrustedEconomicActor(String address, double trust) {
+        this(address, trust, new TransactionNumbering());
+    }
+
+    /**
+     * @param numbering Numbering shared with the other actors of the node, see {@link EconomicCluster#getTransactionNumbering()}.
+     * */
+    public TrustedEconomicActor(String address, double trust, TransactionNumbering numbering) {
         super(address);
+        this.numbering = numbering;
         setTrust(trust);
     }
 
+    /**
+     * Limits the past cone each marker approves directly (see docs/CONFIRMATION.md). Transactions beyond that limit are
+     * considered part of the confirmed base and are neither tracked as referenced nor as missing. Applies to markers
+     * processed afterwards.
+     * @param maxPastConeSize Maximum amount of transactions per marked Tangle or {@link LedgerValidator#UNLIMITED_PAST_CONE_SIZE}.
+     * */
+    public void setMaxPastConeSize(int maxPastConeSize) {
+        if(maxPastConeSize < 1)
+            throw new IllegalArgumentException("'maxPastConeSize' must be positive.");
+        this.maxPastConeSize = maxPastConeSize;
+    }
+
+    /**
+     * @param inlineMarkingBudget Maximum amount of transactions to traverse right away when a marker or a missing
+     *                            transaction arrives, or {@link #UNLIMITED_MARKING_BUDGET}. The remaining past cone is
+     *                            left for {@link #continueMarking(int)}.
+     * */
+    public synchronized void setInlineMarkingBudget(int inlineMarkingBudget) {
+        if(inlineMarkingBudget < 0)
+            throw new IllegalArgumentException("'inlineMarkingBudget' must not be negative.");
+        this.inlineMarkingBudget = inlineMarkingBudget;
+    }
+
     public void setTrust(double trust) {
         if(trust < 0 || trust > 1)
             throw new IllegalArgumentException("'trust' must be within interval [0,1].");
         this.trust = trust;
     }
 
-    public double getConfidence(String transactionHash) {
-        for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence) {
-            if(subTangle.references(transactionHash))
-                return subTangle.getConfidence();
+    public synchronized double getConfidence(String transactionHash) {
+        SubTangle approver = mostConfidentApproverOf(numbering.find(Hash.of(transactionHash)));
+        return approver == null ? 0 : approver.getConfidence();
+    }
+
+    /**
+     * @param transactionNumber Number of the transaction or {@code -1} if it has none.
+     * @return The most confident marked Tangle approving the transaction or {@code null} if there is none.
+     * */
+    private SubTangle mostConfidentApproverOf(int transactionNumber) {
+        if(transactionNumber < 0 || transactionNumber >= mostConfidentApproverByNumber.length)
+            return null;
+        return mostConfidentApproverByNumber[transactionNumber];
+    }
+
+    /**
+     * Indexes the marked Tangle as most confident approver of the transaction unless a more confident one approves it too.
+     * */
+    private void claimApproval(int transactionNumber, SubTangle approver) {
+        if(transactionNumber >= mostConfidentApproverByNumber.length) {
+            int capacity = Math.max(mostConfidentApproverByNumber.length * 2, transactionNumber + 1);
+            mostConfidentApproverByNumber = Arrays.copyOf(mostConfidentApproverByNumber, capacity);
         }
-        return 0;
+        SubTangle current = mostConfidentApproverByNumber[transactionNumber];
+        if(current == null || current.getConfidence() < approver.getConfidence())
+            mostConfidentApproverByNumber[transactionNumber] = approver;
     }
 
-    public boolean hasReferenced(String transactionHash) {
-        for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence) {
-            if(subTangle.references(transactionHash))
-                return true;
+    /**
+     * Walks all marked Tangles, only needed once the indexed approver of the transaction became less confident.
+     * */
+    private SubTangle findMostConfidentApprover(int transactionNumber) {
+        for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence)
+            if(subTangle.references(transactionNumber))
+                return subTangle;
+        return null;
+    }
+
+    /**
+     * Updates the index after the confidence of a marked Tangle changed. Must be called once the Tangle is ordered by
+     * its new confidence.
+     * */
+    private void reindexApprovalsOf(final SubTangle subTangle, double confidenceBefore) {
+        if(subTangle.getConfidence() > confidenceBefore) {
+            subTangle.forEachReferenced(new IntConsumer() {
+                @Override
+                public void accept(int transactionNumber) {
+                    claimApproval(transactionNumber, subTangle);
+                }
+            });
+        } else {
+            subTangle.forEachReferenced(new IntConsumer() {
+                @Override
+                public void accept(int transactionNumber) {
+                    if(mostConfidentApproverByNumber[transactionNumber] == subTangle)
+                        mostConfidentApproverByNumber[transactionNumber] = findMostConfidentApprover(transactionNumber);
+                }
+            });
         }
-        return false;
+    }
+
+    public synchronized boolean hasReferenced(String transactionHash) {
+        return referenced.contains(numbering.find(Hash.of(transactionHash)));
     }
 
     public double getTrust() {
         return trust;
     }
 
-    public void processTransaction(Transaction transaction) {
-        for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence)
-            subTangle.processTransaction(transaction);
+    /**
+     * @return IDs of all marked Tangles whose past cone was extended by the transaction.
+     * */
+    public List<String> processTransaction(Transaction transaction) {
+        return processTransaction(transaction, Hash.of(transaction.hash));
+    }
+
+    /**
+     * @param hash Hash of the transaction, so that it has to be packed only once for all actors.
+     * */
+    synchronized List<String> processTransaction(Transaction transaction, Hash hash) {
+        int number = numbering.find(hash);
+        List<SubTangle> waiting = number < 0 ? null : subTanglesByMissingTransaction.remove(number);
+        if(waiting == null)
+            return Collections.emptyList();
+        List<String> extended = new LinkedList<>();
+        int budget = inlineMarkingBudget;
+        for(SubTangle subTangle : waiting) {
+            subTangle.missingTransactionFound(transaction, number);
+            budget = mark(subTangle, budget);
+            extended.add(subTangle.getID());
+        }
+        numberByProbedTransaction.clear();
+        return extended;
     }
 
-    public void processMarker(Bundle marker) {
+    synchronized boolean hasPendingMarking() {
+        return !subTanglesWithPendingMarking.isEmpty();
+    }
+
+    /**
+     * Continues marking the past cones which could not be marked completely within the inline budget.
+     * @param budget Maximum amount of transactions to traverse.
+     * @return IDs of all marked Tangles whose past cone was extended.
+     * */
+    synchronized List<String> continueMarking(int budget) {
+        List<String> extended = new LinkedList<>();
+        for(SubTangle subTangle : new ArrayList<>(subTanglesWithPendingMarking)) {
+            if(budget == 0)
+                break;
+            budget = mark(subTangle, budget);
+            extended.add(subTangle.getID());
+        }
+        numberByProbedTransaction.clear();
+        return extended;
+    }
+
+    /**
+     * Marking probes each transaction once per approver. Ict hands out the same object for a transaction whenever it is
+     * referenced, so the numbers are memoized by identity for the duration of a marking call and the hash of each
+     * transaction is packed only once per call. The memo is bounded by the marking budget of the call.
+     * */
+    private int numberOf(Transaction transaction) {
+        Integer number = numberByProbedTransaction.get(transaction);
+        if(number == null) {
+            number = numbering.numberOf(Hash.of(transaction.hash));
+            numberByProbedTransaction.put(transaction, number);
+        }
+        return number;
+    }
+
+    private int mark(SubTangle subTangle, int budget) {
+        budget = subTangle.mark(budget);
+        if(subTangle.isMarkingPending())
+            subTanglesWithPendingMarking.add(subTangle);
+        else
+            subTanglesWithPendingMarking.remove(subTangle);
+        return budget;
+    }
+
+    /**
+     * Allows the {@link EconomicCluster} to index which actors wait for which transaction, so that it only passes
+     * arriving transactions to actors missing them.
+     * @return Hashes of all transactions this actor started to miss since the last call.
+     * */
+    synchronized List<Hash> pollNewlyMissingTransactions() {
+        List<Hash> polled = new ArrayList<>(newlyMissingTransactions);
+        newlyMissingTransactions.clear();
+        return polled;
+    }
+
+    /**
+     * @return Whether the number of the transaction must not be released, because marking waits for the transaction or
+     *         because a marked Tangle references it directly.
+     * */
+    synchronized boolean isPinned(int transactionNumber) {
+        return subTanglesByMissingTransaction.containsKey(transactionNumber) || subTanglesByReference.containsKey(transactionNumber);
+    }
+
+    /**
+     * Removes transactions from all past cones before their numbers are released, see {@link EconomicCluster}. Afterwards
+     * the actor considers them as not referenced.
+     * @param transactionNumbers Numbers of transactions which are not {@link #isPinned(int) pinned}.
+     * */
+    synchronized void forgetTransactions(CompressedBitmap transactionNumbers) {
+        final Collection<SubTangle> subTangles = subTanglesByID.values();
+        transactionNumbers.forEach(new IntConsumer() {
+            @Override
+            public void accept(int transactionNumber) {
+                if(!referenced.remove(transactionNumber))
+                    return;
+                if(transactionNumber < mostConfidentApproverByNumber.length)
+                    mostConfidentApproverByNumber[transactionNumber] = null;
+                for(SubTangle subTangle : subTangles)
+                    subTangle.pastCone.remove(transactionNumber);
+            }
+        });
+    }
+
+    boolean usesNumbering(TransactionNumbering numbering) {
+        return this.numbering == numbering;
+    }
+
+    /**
+     * @return IDs of all marked Tangles released since the last call because they were superseded by newer markers.
+     * */
+    synchronized List<String> pollReleasedTangles() {
+        List<String> polled = new ArrayList<>(releasedTangles);
+        releasedTangles.clear();
+        return polled;
+    }
+
+    /**
+     * @return ID of the marked Tangle if the marker is valid and changed the confidence into that Tangle, otherwise {@code null}.
+     * */
+    public synchronized String processMarker(Bundle marker) {
         try {
             SubTangle existingSubTangle = findSubTangleDirectlyReferencedBy(marker.getTail());
+            SubTangle changed = null;
             if(existingSubTangle != null) {
+                double confidenceBefore = existingSubTangle.getConfidence();
                 existingSubTangle.update(marker);
+                if(existingSubTangle.getConfidence() != confidenceBefore) {
+                    changed = existingSubTangle;
+                    subTanglesOrderedByDescendingConfidence.remove(changed);
+                    insertOrderedByConfidence(changed);
+                    reindexApprovalsOf(changed, confidenceBefore);
+                }
             } else {
-                subTanglesOrderedByDescendingConfidence.add(new SubTangle(marker));
+                changed = new SubTangle(marker);
+                insertOrderedByConfidence(changed);
+                subTanglesByID.put(changed.getID(), changed);
+                indexByReference(changed.referenceNumber1, changed);
+                if(changed.referenceNumber2 != changed.referenceNumber1)
+                    indexByReference(changed.referenceNumber2, changed);
+                mark(changed, inlineMarkingBudget);
             }
-            Collections.sort(subTanglesOrderedByDescendingConfidence);
+            return changed == null ? null : changed.getID();
         } catch (Throwable t) {
             t.printStackTrace();
+            return null;
+        } finally {
+            numberByProbedTransaction.clear();
         }
     }
 
-    private SubTangle findSubTangleDirectlyReferencedBy(Transaction transaction) {
-        for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence) {
-            if(subTangle.isDirectlyReferencedBy(transaction)) {
-                return subTangle;
-            }
+    /**
+     * @param markedTangle ID of a Tangle marked by this actor.
+     * @param transactionHash Hash of the transaction to look for.
+     * @return Whether the transaction is part of the past cone of the marked Tangle.
+     * */
+    public synchronized boolean hasReferencedThrough(String markedTangle, String transactionHash) {
+        SubTangle subTangle = subTanglesByID.get(markedTangle);
+        return subTangle != null && subTangle.references(numbering.find(Hash.of(transactionHash)));
+    }
+
+    /**
+     * Walks the past cones of the marked Tangles once against the index instead of probing each indexed reference.
+     * Found references are removed from the index, so that the caller can pass the rest on to the next actor.
+     * @param markedTangles IDs of Tangles, those not marked by this actor are ignored.
+     * @param tanglesByReference Tangles to look for, indexed by the hashes of their references.
+     * @return The Tangles with a reference which is part of the past cone of any of the marked Tangles.
+     * */
+    public synchronized Set<TangleId> findTanglesReferencedThrough(Collection<String> markedTangles, final Map<Hash, List<TangleId>> tanglesByReference) {
+        final Map<Integer, Hash> referenceByNumber = new HashMap<>();
+        for(Hash reference : tanglesByReference.keySet()) {
+            int number = numbering.find(reference);
+            // transactions without number are not referenced by any actor
+            if(number >= 0)
+                referenceByNumber.put(number, reference);
         }
-        return null;
+        final Set<TangleId> found = new HashSet<>();
+        for(String markedTangle : markedTangles) {
+            SubTangle subTangle = subTanglesByID.get(markedTangle);
+            if(subTangle == null || referenceByNumber.isEmpty())
+                continue;
+            subTangle.forEachReferenced(new IntConsumer() {
+                @Override
+                public void accept(int transactionNumber) {
+                    Hash reference = referenceByNumber.remove(transactionNumber);
+                    if(reference != null)
+                        found.addAll(tanglesByReference.remove(reference));
+                }
+            });
+        }
+        return found;
     }
 
-    public Map<String, Double> getMarkedTangles() {
+    private void insertOrderedByConfidence(SubTangle subTangle) {
+        int index = Collections.binarySearch(subTanglesOrderedByDescendingConfidence, subTangle);
+        subTanglesOrderedByDescendingConfidence.add(index < 0 ? -index - 1 : index, subTangle);
+    }
+
+    private void release(SubTangle subTangle) {
+        subTanglesOrderedByDescendingConfidence.remove(subTangle);
+        subTanglesByID.remove(subTangle.getID());
+        subTanglesByReference.get(subTangle.referenceNumber1).remove(subTangle);
+        if(subTanglesByReference.get(subTangle.referenceNumber1).isEmpty())
+            subTanglesByReference.remove(subTangle.referenceNumber1);
+        if(subTangle.referenceNumber2 != subTangle.referenceNumber1) {
+            subTanglesByReference.get(subTangle.referenceNumber2).remove(subTangle);
+            if(subTanglesByReference.get(subTangle.referenceNumber2).isEmpty())
+                subTanglesByReference.remove(subTangle.referenceNumber2);
+        }
+        releasedTangles.add(subTangle.getID());
+    }
+
+    private void indexByReference(int referenceNumber, SubTangle subTangle) {
+        List<SubTangle> referencing = subTanglesByReference.get(referenceNumber);
+        if(referencing == null) {
+            referencing = new LinkedList<>();
+            subTanglesByReference.put(referenceNumber, referencing);
+        }
+        referencing.add(subTangle);
+    }
+
+    private SubTangle findSubTangleDirectlyReferencedBy(Transaction transaction) {
+        return subTanglesByID.get(tangleID(transaction.branchHash(), transaction.trunkHash()));
+    }
+
+    public synchronized boolean hasMarked(String tangle) {
+        return subTanglesByID.containsKey(tangle);
+    }
+
+    public synchronized Map<String, Double> getMarkedTangles() {
         Map<String, Double> markedTangles = new HashMap<>();
         for(SubTangle subTangle : subTanglesOrderedByDescendingConfidence)
             markedTangles.put(subTangle.getID(), subTangle.getConfidence());
         return markedTangles;
     }
 
+    /**
+     * @return Index of the key of this actor the marker was signed with, later markers are signed with higher indexes.
+     * @throws IllegalArgumentException If the marker was not signed by this actor.
+     * */
+    protected int deriveSignatureIndex(Bundle marker) {
+        MerkleTree.Signature markerSignature = getMarkerSignature(marker);
+        if(markerSignature == null || !address.equals(markerSignature.deriveAddress()))
+            throw new IllegalArgumentException("Marker signature is invalid.");
+        return markerSignature.deriveIndex();
+    }
+
     protected MerkleTree.Signature getMarkerSignature(Bundle marker) {
         Transfer transfer = new Transfer(marker);
         List<BalanceChange> listOfSingleOutput = new LinkedList<>(transfer.getOutputs());
@@ -102,16 +440,32 @@ public class TrustedEconomicActor extends EconomicActor {
         protected int index = -1;
         protected double confidence;
         protected final String referencedTransaction1, referencedTransaction2;
-        protected final Set<String> referenced = new HashSet<>();
-        protected final Set<String> missing = new HashSet<>();
+        protected final int referenceNumber1, referenceNumber2;
+        protected final String id;
+        // numbers of all approved transactions, including the missing ones, except for those of inherited Tangles
+        protected CompressedBitmap pastCone = new CompressedBitmap();
+        // older marked Tangles whose past cones are approved indirectly
+        protected final List<SubTangle> inherited = new LinkedList<>();
+        protected int amountOfInheritors = 0;
+        // approved transactions whose references have not been marked yet
+        private final LinkedList<Transaction> toTraverse = new LinkedList<>();
+        // like toTraverse, but references of other marked Tangles whose past cone might be inherited instead
+        private final LinkedList<Transaction> toInheritOrTraverse = new LinkedList<>();
+        private int amountOfMissingTransactions = 0;
+        // amount of transactions approved directly, limited by maxPastConeSize
+        private int amountOfDirectlyApproved = 0;
+        private boolean limitReached = false;
 
         protected SubTangle(Bundle marker) {
             Transaction tail = marker.getTail();
             referencedTransaction1 = tail.branchHash();
             referencedTransaction2 = tail.trunkHash();
+            id = tangleID(referencedTransaction1, referencedTransaction2);
             update(marker);
-            markAsApprovedRecursively(tail.getBranch());
-            markAsApprovedRecursively(tail.getTrunk());
+            referenceNumber1 = numbering.numberOf(Hash.of(referencedTransaction1));
+            referenceNumber2 = numbering.numberOf(Hash.of(referencedTransaction2));
+            approveOrReportMissing(tail.getBranch(), referencedTransaction1);
+            approveOrReportMissing(tail.getTrunk(), referencedTransaction2);
         }
 
         protected int getIndex() {
@@ -128,12 +482,9 @@ public class TrustedEconomicActor extends EconomicActor {
             if(!isDirectlyReferencedBy(tail))
                 throw new IllegalArgumentException("Marker does not belong this subtangle.");
 
-            MerkleTree.Signature markerSignature = getMarkerSignature(marker);
-            if(markerSignature == null || !address.equals(markerSignature.deriveAddress()))
-                throw new IllegalArgumentException("Marker signature is invalid.");
-
-            if(this.index < markerSignature.deriveIndex()) {
-                this.index = markerSignature.deriveIndex();
+            int markerIndex = deriveSignatureIndex(marker);
+            if(this.index < markerIndex) {
+                this.index = markerIndex;
                 this.confidence = decodeConfidence(tail.tag());
             }
         }
@@ -143,42 +494,197 @@ public class TrustedEconomicActor extends EconomicActor {
         }
 
         protected String getID() {
-            return tangleID(referencedTransaction1, referencedTransaction2);
+            return id;
+        }
+
+        /**
+         * @param transactionNumber Number of the transaction or {@code -1} if it has none.
+         * */
+        protected boolean references(int transactionNumber) {
+            if(pastCone.contains(transactionNumber))
+                return true;
+            for(SubTangle inheritedSubTangle : inherited)
+                if(inheritedSubTangle.references(transactionNumber))
+                    return true;
+            return false;
+        }
+
+        /**
+         * @return Whether the transaction was not approved by this Tangle before.
+         * */
+        private boolean approve(int transactionNumber) {
+            if(references(transactionNumber))
+                return false;
+            pastCone.add(transactionNumber);
+            referenced.add(transactionNumber);
+            claimApproval(transactionNumber, this);
+            amountOfDirectlyApproved++;
+            return true;
         }
 
-        protected boolean references(String transactionHash) {
-            return referenced.contains(transactionHash) || missing.contains(transactionHash);
+        /**
+         * Passes the numbers of all transactions in the past cone, including the inherited ones, to the action. Numbers
+         * approved through several inherited Tangles are passed more than once.
+         * */
+        protected void forEachReferenced(IntConsumer action) {
+            pastCone.forEach(action);
+            for(SubTangle inheritedSubTangle : inherited)
+                inheritedSubTangle.forEachReferenced(action);
         }
 
-        protected void processTransaction(Transaction transaction) {
-            if(missing.contains(transaction.hash))
-                missingTransactionFound(transaction);
+        private void waitFor(Hash missingTransaction, int transactionNumber) {
+            List<SubTangle> waiting = subTanglesByMissingTransaction.get(transactionNumber);
+            if(waiting == null) {
+                waiting = new LinkedList<>();
+                subTanglesByMissingTransaction.put(transactionNumber, waiting);
+                newlyMissingTransactions.add(missingTransaction);
+            }
+            waiting.add(this);
+            amountOfMissingTransactions++;
         }
 
-        protected synchronized void missingTransactionFound(Transaction missingTransaction) {
-            missing.remove(missingTransaction.hash);
-            if(referenced.add(missingTransaction.hash))
-                markAsApprovedRecursively(missingTransaction);
+        protected void missingTransactionFound(Transaction missingTransaction, int transactionNumber) {
+            amountOfMissingTransactions--;
+            // already approved while missing, only its references are left to mark
+            enqueue(missingTransaction, transactionNumber);
         }
 
-        protected void markAsApprovedRecursively(Transaction root) {
-            if(referenced.add(root.hash)) {
-                markAsApprovedRecursivelyOrReportMissing(root.getTrunk(), root.trunkHash());
-                markAsApprovedRecursivelyOrReportMissing(root.getBranch(), root.branchHash());
+        /**
+         * Continues marking the past cone in breadth-first order, so that the transactions closest to the marker are
+         * covered first once {@link #maxPastConeSize} is reached.
+         * @param budget Maximum amount of transactions to traverse.
+         * @return The remaining budget.
+         * */
+        protected int mark(int budget) {
+            while (budget > 0) {
+                if(isLimitReached()) {
+                    toTraverse.clear();
+                    toInheritOrTraverse.clear();
+                    break;
+                }
+                Transaction current = toTraverse.poll();
+                if(current == null) {
+                    current = toInheritOrTraverse.poll();
+                    if(current == null)
+                        break;
+                    if(inheritPastConeOf(current))
+                        continue;
+                }
+                budget--;
+                approveOrReportMissing(current.getTrunk(), current.trunkHash());
+                approveOrReportMissing(current.getBranch(), current.branchHash());
             }
+            return budget;
+        }
+
+        protected boolean isMarkingPending() {
+            return !toTraverse.isEmpty() || !toInheritOrTraverse.isEmpty();
+        }
+
+        /**
+         * @return Whether this past cone is final, so that it can be inherited by other marked Tangles.
+         * */
+        private boolean isCompletelyMarked() {
+            return !isMarkingPending() && amountOfMissingTransactions == 0;
         }
 
-        protected void markAsApprovedRecursivelyOrReportMissing(Transaction transactionOrNull, String transactionHash) {
+        /**
+         * Once both references of another completely marked Tangle are approved, everything the other Tangle approves
+         * is approved indirectly and does not have to be traversed again. This is the common case for consecutive
+         * markers of the same actor, whose past cones overlap almost entirely.
+         * @return Whether a past cone including the reference was inherited.
+         * */
+        private boolean inheritPastConeOf(Transaction reference) {
+            List<SubTangle> referencing = subTanglesByReference.get(numberOf(reference));
+            if(referencing == null)
+                return false;
+            for(SubTangle other : new ArrayList<>(referencing)) {
+                if(other == this || !other.isCompletelyMarked())
+                    continue;
+                if(!pastCone.contains(other.referenceNumber1) || !pastCone.contains(other.referenceNumber2))
+                    continue;
+                // releasing a more confident Tangle would lower the confidence into its past cone
+                if(other.index < index && other.amountOfInheritors == 0 && confidence >= other.confidence)
+                    takeOver(other);
+                else {
+                    inherited.add(other);
+                    other.amountOfInheritors++;
+                    // the other Tangle or a more confident one is indexed for all transactions of the other past cone
+                    if(confidence > other.confidence)
+                        claimApprovalsOf(other);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes over the past cone of a superseded marked Tangle, which is released afterwards. Only the smaller of
+         * both past cones is copied, usually the part approved by this Tangle alone.
+         * */
+        private void takeOver(SubTangle superseded) {
+            if(pastCone.cardinality() < superseded.pastCone.cardinality()) {
+                superseded.pastCone.or(pastCone);
+                pastCone = superseded.pastCone;
+            } else {
+                pastCone.or(superseded.pastCone);
+            }
+            inherited.addAll(superseded.inherited);
+            release(superseded);
+            claimApprovalsOf(superseded);
+        }
+
+        /**
+         * Claims the approval of all transactions in the past cone of another marked Tangle, which this Tangle approves
+         * now as well. Transactions indexed for the other Tangle are reindexed, since it might have been released.
+         * Must only be called if this Tangle is at least as confident as the other one.
+         * */
+        private void claimApprovalsOf(final SubTangle other) {
+            final SubTangle approver = this;
+            other.forEachReferenced(new IntConsumer() {
+                @Override
+                public void accept(int transactionNumber) {
+                    // only called if this Tangle is at least as confident as the other one
+                    if(mostConfidentApproverByNumber[transactionNumber] == other)
+                        mostConfidentApproverByNumber[transactionNumber] = approver;
+                    else
+                        claimApproval(transactionNumber, approver);
+                }
+            });
+        }
+
+        private void approveOrReportMissing(Transaction transactionOrNull, String transactionHash) {
+            // transactions beyond the limit are considered part of the confirmed base
+            if(isLimitReached())
+                return;
             if(transactionOrNull != null) {
-                markAsApprovedRecursively(transactionOrNull);
+                int number = numberOf(transactionOrNull);
+                if(approve(number))
+                    enqueue(transactionOrNull, number);
             } else {
-                missing.add(transactionHash);
+                Hash hash = Hash.of(transactionHash);
+                int number = numbering.numberOf(hash);
+                if(approve(number))
+                    waitFor(hash, number);
             }
         }
 
+        private void enqueue(Transaction approved, int transactionNumber) {
+            if(subTanglesByReference.containsKey(transactionNumber))
+                toInheritOrTraverse.add(approved);
+            else
+                toTraverse.add(approved);
+        }
+
+        private boolean isLimitReached() {
+            if(amountOfDirectlyApproved >= maxPastConeSize)
+                limitReached = true;
+            return limitReached;
+        }
+
         @Override
         public int compareTo(SubTangle subTangle) {
             return -Double.compare(confidence, subTangle.confidence);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package org.iota.ec.model;
+
+import java.util.*;
+
+/**
+ * Append-only log of changes whose version increases with every entry. Registered readers {@link #poll(Object) poll}
+ * the entries added since their last poll. Entries read by all registered readers are dropped, so the log only grows
+ * while a reader falls behind. Readers are referenced weakly and stop holding back entries once they are garbage.
+ * */
+class VersionedLog<T> {
+
+    private final List<T> entries = new ArrayList<>();
+    // version before the oldest entry kept
+    private long offset = 0;
+    private final Map<Object, Long> versionByReader = new WeakHashMap<>();
+
+    synchronized void add(T entry) {
+        entries.add(entry);
+    }
+
+    synchronized void addAll(Collection<T> entries) {
+        this.entries.addAll(entries);
+    }
+
+    synchronized long getVersion() {
+        return offset + entries.size();
+    }
+
+    /**
+     * @return All entries added since that version or {@code null} if some of them have been dropped already.
+     * */
+    synchronized Set<T> getSince(long version) {
+        if(version < offset)
+            return null;
+        return new HashSet<>(entries.subList((int) Math.min(version - offset, entries.size()), entries.size()));
+    }
+
+    /**
+     * Registers the reader at the current version, so that its first poll returns the entries added from now on.
+     * */
+    synchronized void register(Object reader) {
+        versionByReader.put(reader, getVersion());
+    }
+
+    /**
+     * @return All entries added since the last poll of the reader.
+     * */
+    synchronized Set<T> poll(Object reader) {
+        Long version = versionByReader.get(reader);
+        if(version == null)
+            throw new IllegalArgumentException("Reader is not registered.");
+        Set<T> polled = getSince(version);
+        versionByReader.put(reader, getVersion());
+        dropEntriesReadByAll();
+        return polled;
+    }
+
+    private void dropEntriesReadByAll() {
+        long minVersion = getVersion();
+        for(long version : versionByReader.values())
+            minVersion = Math.min(minVersion, version);
+        entries.subList(0, (int) (minVersion - offset)).clear();
+        offset = minVersion;
+    }
+}
@@ -0,0 +1,152 @@
+package org.iota.ec;
+
+import org.iota.ec.model.*;
+import org.iota.ec.util.SerializableAutoIndexableMerkleTree;
+import org.iota.ict.Ict;
+import org.iota.ict.utils.Trytes;
+import org.iota.ict.utils.crypto.SignatureSchemeImplementation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class TickSchedulerTest extends IctTestTemplate {
+
+    @Test
+    public void testDebounce() {
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, new HashMap<String, BigInteger>(), randomMerkleTree());
+
+        ManualExecutor executor = new ManualExecutor();
+        TickScheduler scheduler = new TickScheduler(executor, 50, 60000, 1000);
+        for(int i = 0; i < 10; i++)
+            scheduler.schedule(actor);
+        Assert.assertEquals("Ticks were not debounced.", 1, executor.tasks.size());
+        Assert.assertEquals(50, (long) executor.delays.peek());
+
+        executor.runNext();
+        Assert.assertEquals(1, scheduler.getTicks());
+        Assert.assertEquals(0, scheduler.getFailedTicks());
+
+        // rate limit delays the next tick
+        scheduler.schedule(actor);
+        Assert.assertEquals(1, executor.tasks.size());
+        Assert.assertTrue("Tick was not rate limited.", executor.delays.peek() > 50);
+
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testIncompleteTicksBackOff() {
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        SignatureSchemeImplementation.PrivateKey key = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        BigInteger value = BigInteger.valueOf(10);
+        Map<String, BigInteger> initialBalances = new HashMap<>();
+        initialBalances.put(key.deriveAddress(), value);
+        String transfer = submitBundle(ict, buildValidTransfer(key, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+        final String tangle = EconomicActor.tangleID(transfer, transfer);
+
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, initialBalances, randomMerkleTree()) {
+            @Override
+            public TickResult tick(Collection<String> newTangles, long budget) {
+                return super.tick(Collections.singleton(tangle), budget);
+            }
+        };
+        // no confidence is ever precise enough, so every tick is incomplete
+        actor.setConfidenceErrorBound(-1);
+
+        ManualExecutor executor = new ManualExecutor();
+        TickScheduler scheduler = new TickScheduler(executor, 0, 1000, 1000);
+        scheduler.schedule(actor);
+
+        long previousDelay = -1;
+        for(int tick = 0; tick <= TickScheduler.MAX_INCOMPLETE_RETICKS; tick++) {
+            Assert.assertEquals("Incomplete tick was not retried.", 1, executor.tasks.size());
+            long delay = executor.delays.peek();
+            Assert.assertTrue("Retries did not back off.", tick < 2 || delay > previousDelay);
+            previousDelay = delay;
+            executor.runNext();
+        }
+        Assert.assertEquals(TickScheduler.MAX_INCOMPLETE_RETICKS + 1, scheduler.getIncompleteTicks());
+        Assert.assertEquals("Incomplete ticks were retried forever.", 0, executor.tasks.size());
+
+        // new markers justify another attempt
+        scheduler.schedule(actor);
+        Assert.assertEquals(1, executor.tasks.size());
+
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testTicksConcurrentToGossip() {
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        List<AutonomousEconomicActor> autonomousActors = new LinkedList<>();
+        for(int i = 0; i < 3; i++) {
+            AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, new HashMap<String, BigInteger>(), randomMerkleTree());
+            actor.setIncremental(true);
+            cluster.addActor(new TrustedEconomicActor(actor.getAddress(), 0.2), false);
+            autonomousActors.add(actor);
+        }
+        ControlledEconomicActor other = new ControlledEconomicActor(randomMerkleTree());
+        cluster.addActor(new TrustedEconomicActor(other.getAddress(), 0.4), false);
+
+        TickScheduler scheduler = new TickScheduler(3, 0, 0, 1000);
+        String previous = null;
+        for(int i = 0; i < 30; i++) {
+            SignatureSchemeImplementation.PrivateKey key = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+            Set<String> references = previous == null ? Collections.<String>emptySet() : Collections.singleton(previous);
+            String transfer = submitBundle(ict, buildValidTransfer(key, BigInteger.ZERO, Trytes.randomSequenceOfLength(81), references));
+            // markers are received by the cluster while ticks of all actors are running
+            submitBundle(ict, other.buildMarker(transfer, previous == null ? transfer : previous, 0.5));
+            scheduler.scheduleAll(autonomousActors);
+            previous = transfer;
+        }
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while ((scheduler.getQueueDepth() > 0 || scheduler.getActiveTicks() > 0) && System.currentTimeMillis() < timeout)
+            saveSleep(10);
+        Assert.assertTrue("Ticks did not finish.", System.currentTimeMillis() < timeout);
+        Assert.assertTrue("Actors were not ticked.", scheduler.getTicks() > 0);
+        Assert.assertEquals("Ticks failed while gossip was processed.", 0, scheduler.getFailedTicks());
+
+        scheduler.shutdown();
+    }
+
+    private static SerializableAutoIndexableMerkleTree randomMerkleTree() {
+        return new SerializableAutoIndexableMerkleTree(Trytes.randomSequenceOfLength(81), 3, 2);
+    }
+
+    /**
+     * Collects scheduled tasks instead of running them, so that tests decide when ticks happen.
+     * */
+    private static class ManualExecutor extends ScheduledThreadPoolExecutor {
+
+        private final Queue<Runnable> tasks = new LinkedList<>();
+        private final Queue<Long> delays = new LinkedList<>();
+
+        private ManualExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            delays.add(unit.toMillis(delay));
+            return null;
+        }
+
+        private void runNext() {
+            delays.poll();
+            tasks.poll().run();
+        }
+    }
+}
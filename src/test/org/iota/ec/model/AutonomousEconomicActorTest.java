@@ -146,6 +146,105 @@ public class AutonomousEconomicActorTest extends IctTestTemplate {
         }
     }
 
+    @Test
+    public void testTickResult() {
+
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        SignatureSchemeImplementation.PrivateKey key = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        BigInteger value = BigInteger.valueOf(10);
+
+        Map<String, BigInteger> initialBalances = new HashMap<>();
+        initialBalances.put(key.deriveAddress(), value);
+
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, initialBalances, randomMerkleTree(3));
+        cluster.addActor(new TrustedEconomicActor(actor.getAddress(), 1), false);
+
+        String transfer = submitBundle(ict, buildValidTransfer(key, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+        String tangle = EconomicActor.tangleID(transfer, transfer);
+
+        TickResult result = actor.tick(Collections.singleton(tangle), 10000);
+        Assert.assertTrue("Tick was not completed within budget: " + result, result.isComplete());
+        Assert.assertTrue("Tangle was not evaluated.", result.getEvaluated().contains(tangle));
+        Assert.assertTrue("No marker was issued for new tangle.", result.getPublished().contains(tangle));
+    }
+
+    @Test
+    public void testIncrementalTick() {
+
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        SignatureSchemeImplementation.PrivateKey key1 = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        SignatureSchemeImplementation.PrivateKey key2 = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        BigInteger value = BigInteger.valueOf(10);
+
+        Map<String, BigInteger> initialBalances = new HashMap<>();
+        initialBalances.put(key1.deriveAddress(), value);
+        initialBalances.put(key2.deriveAddress(), value);
+
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, initialBalances, randomMerkleTree(3));
+        actor.setIncremental(true);
+        ControlledEconomicActor other = new ControlledEconomicActor(randomMerkleTree(3));
+        cluster.addActor(new TrustedEconomicActor(actor.getAddress(), 0.5), false);
+        cluster.addActor(new TrustedEconomicActor(other.getAddress(), 0.5), false);
+
+        String transfer1 = submitBundle(ict, buildValidTransfer(key1, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+        String transfer2 = submitBundle(ict, buildValidTransfer(key2, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+
+        submitBundle(ict, other.buildMarker(transfer1, transfer1, 0.05));
+        saveSleep(50);
+        TickResult first = actor.tick();
+        Assert.assertTrue("Marked tangle was not evaluated.", first.getEvaluated().contains(EconomicActor.tangleID(transfer1, transfer1)));
+
+        submitBundle(ict, other.buildMarker(transfer2, transfer2, 0.05));
+        saveSleep(50);
+        TickResult second = actor.tick();
+        Assert.assertTrue("Newly marked tangle was not evaluated.", second.getEvaluated().contains(EconomicActor.tangleID(transfer2, transfer2)));
+        assertConfidenceInterval(cluster, transfer2, 0.5*0.05, 1.01);
+    }
+
+    @Test
+    public void testSharedLedgerValidator() {
+
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        SignatureSchemeImplementation.PrivateKey key = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        BigInteger value = BigInteger.valueOf(10);
+
+        LedgerValidator sharedValidator = new LedgerValidator(ict, new HashMap<String, BigInteger>());
+        AutonomousEconomicActor actorWithFunds = new AutonomousEconomicActor(ict, cluster, sharedValidator, randomMerkleTree(3));
+        AutonomousEconomicActor actorWithoutFunds = new AutonomousEconomicActor(ict, cluster, sharedValidator, randomMerkleTree(3));
+        actorWithFunds.changeInitialBalance(key.deriveAddress(), value);
+
+        String transfer = submitBundle(ict, buildValidTransfer(key, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+        String tangle = EconomicActor.tangleID(transfer, transfer);
+
+        Assert.assertTrue("Actor specific balance was not considered.", actorWithFunds.isTangleValid(tangle));
+        Assert.assertFalse("Actor specific balance leaked into shared validator.", actorWithoutFunds.isTangleValid(tangle));
+    }
+
+    @Test
+    public void testReevaluateAfterBalanceChange() {
+
+        Ict ict = createIct();
+        EconomicCluster cluster = new EconomicCluster(ict);
+
+        SignatureSchemeImplementation.PrivateKey key = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        BigInteger value = BigInteger.valueOf(10);
+
+        AutonomousEconomicActor actor = new AutonomousEconomicActor(ict, cluster, new HashMap<String, BigInteger>(), randomMerkleTree(3));
+        String transfer = submitBundle(ict, buildValidTransfer(key, value, Trytes.randomSequenceOfLength(81), Collections.<String>emptySet()));
+        String tangle = EconomicActor.tangleID(transfer, transfer);
+        Assert.assertFalse("Tangle spending unavailable funds was recognized as valid.", actor.isTangleValid(tangle));
+
+        actor.changeInitialBalance(key.deriveAddress(), value);
+        actor.tick(Collections.singleton(tangle));
+        Assert.assertTrue("Tangle was not re-evaluated after balance change.", actor.isTangleValid(tangle));
+    }
+
     private static double assertConfidenceInterval(EconomicCluster cluster, String transaction, double expectedMin, double expectedMax) {
         double actual = cluster.determineApprovalConfidence(transaction);
         Assert.assertTrue("Unexpected confidence of " + transaction + " ("+actual+" <= "+expectedMin+")", actual > expectedMin);
@@ -0,0 +1,61 @@
+package org.iota.ec.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class BalanceMapTest {
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(42);
+        BalanceMap balances = new BalanceMap();
+        Map<String, BigInteger> expected = new HashMap<>();
+
+        for(int i = 0; i < 10000; i++) {
+            String address = "A" + random.nextInt(1000);
+            long value = random.nextInt(2000) - 1000;
+            balances.add(address, value);
+            expected.put(address, expected.getOrDefault(address, BigInteger.ZERO).add(BigInteger.valueOf(value)));
+        }
+
+        Assert.assertEquals(expected.size(), balances.size());
+        Assert.assertEquals(expected, balances.toMap());
+        Assert.assertEquals(BigInteger.ZERO, balances.get("unknown"));
+        Assert.assertEquals(-1, balances.find("unknown"));
+    }
+
+    @Test
+    public void testOverflow() {
+        BalanceMap balances = new BalanceMap();
+        balances.add("A", Long.MAX_VALUE);
+        balances.add("A", 1);
+
+        int slot = balances.find("A");
+        Assert.assertTrue("Overflow was not detected.", balances.overflowsAt(slot));
+        Assert.assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), balances.get("A"));
+
+        balances.add("A", BigInteger.valueOf(-2));
+        Assert.assertFalse("Balance did not return to long after being back in range.", balances.overflowsAt(slot));
+        Assert.assertEquals(Long.MAX_VALUE - 1, balances.longAt(slot));
+    }
+
+    @Test
+    public void testCopyAndAddAll() {
+        BalanceMap balances = new BalanceMap();
+        balances.add("A", 5);
+        balances.add("B", BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE));
+
+        BalanceMap copy = new BalanceMap(balances);
+        copy.addAll(balances);
+        balances.add("A", 1);
+
+        Assert.assertEquals(BigInteger.valueOf(10), copy.get("A"));
+        Assert.assertEquals(BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE).shiftLeft(1), copy.get("B"));
+        Assert.assertEquals(BigInteger.valueOf(6), balances.get("A"));
+    }
+}
@@ -0,0 +1,83 @@
+package org.iota.ec.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CompatibilityCacheTest {
+
+    private static final TangleId A = tangle('A'), B = tangle('B'), C = tangle('C'), D = tangle('D');
+
+    @Test
+    public void testUnorderedPair() {
+        CompatibilityCache cache = new CompatibilityCache(10);
+        cache.putAddressesOf(A, Collections.singleton("X"));
+        cache.putAddressesOf(B, Collections.singleton("Y"));
+        cache.put(A, B, false);
+        Assert.assertEquals(Boolean.FALSE, cache.get(B, A));
+        Assert.assertNull(cache.get(A, C));
+    }
+
+    @Test
+    public void testInvalidateOnlyAffectedPairs() {
+        CompatibilityCache cache = new CompatibilityCache(10);
+        cache.putAddressesOf(A, Collections.singleton("X"));
+        cache.putAddressesOf(B, Collections.singleton("Y"));
+        cache.putAddressesOf(C, Collections.singleton("Z"));
+        cache.put(A, B, true);
+        cache.put(B, C, true);
+
+        cache.invalidate("X");
+        Assert.assertNull(cache.get(A, B));
+        Assert.assertEquals(Boolean.TRUE, cache.get(B, C));
+        Assert.assertFalse("Addresses of tangle without pairs were kept.", cache.hasAddressesOf(A));
+
+        cache.invalidate("unrelated");
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        CompatibilityCache cache = new CompatibilityCache(2);
+        for(TangleId tangle : new TangleId[] {A, B, C, D})
+            cache.putAddressesOf(tangle, Collections.<String>emptySet());
+        cache.put(A, B, true);
+        cache.put(A, C, true);
+        cache.get(A, B);
+        cache.put(A, D, true);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull("Least recently used pair was not evicted.", cache.get(A, C));
+        Assert.assertNotNull(cache.get(A, B));
+        Assert.assertFalse(cache.hasAddressesOf(C));
+    }
+
+    @Test
+    public void testInvalidateAfterEviction() {
+        CompatibilityCache cache = new CompatibilityCache(1);
+        cache.putAddressesOf(A, Collections.singleton("X"));
+        cache.putAddressesOf(B, Collections.singleton("Y"));
+        cache.put(A, B, true);
+        cache.putAddressesOf(C, Collections.singleton("Z"));
+        cache.putAddressesOf(D, Collections.singleton("Z"));
+        cache.put(C, D, true);
+        cache.invalidate("X");
+        Assert.assertEquals(1, cache.size());
+
+        cache.putAddressesOf(A, Collections.singleton("X"));
+        cache.put(A, C, false);
+        cache.invalidate("X");
+        Assert.assertNull(cache.get(A, C));
+        Assert.assertEquals(0, cache.size());
+        for(TangleId tangle : new TangleId[] {A, B, C, D})
+            Assert.assertFalse("Addresses of tangle without pairs were kept.", cache.hasAddressesOf(tangle));
+    }
+
+    private static TangleId tangle(char tryte) {
+        char[] trytes = new char[2 * Hash.LENGTH];
+        Arrays.fill(trytes, tryte);
+        return TangleId.of(new String(trytes));
+    }
+}
@@ -0,0 +1,149 @@
+package org.iota.ec.model;
+
+import org.iota.ict.utils.Trytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+public class CompressedBitmapTest {
+
+    @Test
+    public void testAgainstHashSet() {
+        Random random = new Random(42);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        Set<Integer> expected = new HashSet<>();
+
+        // dense range to force bitmap containers, sparse values for array containers
+        for(int i = 0; i < 10000; i++)
+            Assert.assertEquals(expected.add(i), bitmap.add(i));
+        for(int i = 0; i < 20000; i++) {
+            int value = random.nextInt(1 << 24);
+            Assert.assertEquals(expected.add(value), bitmap.add(value));
+        }
+        Assert.assertEquals(expected.size(), bitmap.cardinality());
+
+        // shrink the dense container back below the array threshold
+        for(int i = 0; i < 9000; i++)
+            Assert.assertEquals(expected.remove(i), bitmap.remove(i));
+        for(int i = 0; i < 20000; i++) {
+            int value = random.nextInt(1 << 24);
+            Assert.assertEquals(expected.remove(value), bitmap.remove(value));
+        }
+        Assert.assertEquals(expected.size(), bitmap.cardinality());
+
+        for(int i = 0; i < 1 << 16; i++)
+            Assert.assertEquals(expected.contains(i), bitmap.contains(i));
+        for(int value : expected)
+            Assert.assertTrue(bitmap.contains(value));
+        Assert.assertFalse(bitmap.contains(-1));
+    }
+
+    @Test
+    public void testOr() {
+        Random random = new Random(7);
+        for(int round = 0; round < 20; round++) {
+            CompressedBitmap a = new CompressedBitmap(), b = new CompressedBitmap();
+            Set<Integer> expected = new HashSet<>();
+            // ranges of varying density, so that all combinations of array and bitmap containers occur
+            int range = 1 << (14 + random.nextInt(6));
+            for(int i = random.nextInt(8000); i > 0; i--) {
+                int value = random.nextInt(range);
+                a.add(value);
+                expected.add(value);
+            }
+            for(int i = random.nextInt(8000); i > 0; i--) {
+                int value = random.nextInt(range);
+                b.add(value);
+                expected.add(value);
+            }
+            int cardinalityOfB = b.cardinality();
+            a.or(b);
+            Assert.assertEquals(expected.size(), a.cardinality());
+            for(int value = 0; value < range; value++)
+                Assert.assertEquals(expected.contains(value), a.contains(value));
+            // the containers of b must not be shared with a
+            for(int value = 0; value < range; value++)
+                if(b.contains(value))
+                    a.remove(value);
+            Assert.assertEquals(cardinalityOfB, b.cardinality());
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        Random random = new Random(3);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // a dense chunk for a bitmap container between sparse ones
+        for(int i = 1 << 16; i < (1 << 16) + 6000; i++) {
+            bitmap.add(i);
+            expected.add(i);
+        }
+        for(int i = 0; i < 3000; i++) {
+            int value = random.nextInt(1 << 20);
+            bitmap.add(value);
+            expected.add(value);
+        }
+
+        final List<Integer> iterated = new ArrayList<>();
+        bitmap.forEach(new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                iterated.add(value);
+            }
+        });
+        Assert.assertEquals(new ArrayList<>(expected), iterated);
+    }
+
+    @Test
+    public void testNumbering() {
+        TransactionNumbering numbering = new TransactionNumbering();
+        Hash[] hashes = new Hash[5000];
+        for(int i = 0; i < hashes.length; i++) {
+            hashes[i] = Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH));
+            Assert.assertEquals(-1, numbering.find(hashes[i]));
+            Assert.assertEquals(i, numbering.numberOf(hashes[i]));
+        }
+        for(int i = 0; i < hashes.length; i++) {
+            Assert.assertEquals(i, numbering.numberOf(hashes[i]));
+            Assert.assertEquals(i, numbering.find(Hash.of(hashes[i].toString())));
+        }
+        Assert.assertEquals(hashes.length, numbering.size());
+    }
+
+    @Test
+    public void testNumberingRelease() {
+        Random random = new Random(11);
+        TransactionNumbering numbering = new TransactionNumbering();
+        Hash[] hashes = new Hash[5000];
+        for(int i = 0; i < hashes.length; i++)
+            hashes[i] = Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH));
+        for(Hash hash : hashes)
+            numbering.numberOf(hash);
+
+        Set<Integer> released = new HashSet<>();
+        for(int i = 0; i < hashes.length; i++) {
+            if(random.nextBoolean()) {
+                numbering.release(i);
+                released.add(i);
+            }
+        }
+        Assert.assertEquals(hashes.length - released.size(), numbering.size());
+        for(int i = 0; i < hashes.length; i++) {
+            Assert.assertEquals(released.contains(i) ? -1 : i, numbering.find(hashes[i]));
+            Assert.assertEquals(released.contains(i) ? null : hashes[i], numbering.hashOf(i));
+        }
+
+        // released numbers are reassigned before new ones
+        for(int i = 0; i < released.size(); i++) {
+            Hash hash = Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH));
+            int number = numbering.numberOf(hash);
+            Assert.assertTrue(released.contains(number));
+            Assert.assertEquals(hash, numbering.hashOf(number));
+        }
+        Assert.assertEquals(hashes.length, numbering.getAmountOfNumbers());
+        Assert.assertEquals(hashes.length, numbering.size());
+    }
+}
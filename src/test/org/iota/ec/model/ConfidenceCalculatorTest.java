@@ -39,4 +39,120 @@ public class ConfidenceCalculatorTest {
         Assert.assertEquals("Unexpected confidence", 1/3.0, confidenceCalculator.confidenceOf("b"), 1E-3);
         Assert.assertEquals("Unexpected confidence", 2/3.0, confidenceCalculator.confidenceOf("c"), 1E-3);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWeightedWithConflictFreeTangle() {
+
+        List<String> tangles = Arrays.asList("a", "b", "c");
+
+        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+        conflicts.add(new ConfidenceCalculator.Conflict("a", "b"));
+
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(tangles, conflicts, new double[] {0.3, 0.1, 0.6});
+
+        Assert.assertEquals("Unexpected confidence", 0.75, confidenceCalculator.confidenceOf("a"), 1E-3);
+        Assert.assertEquals("Unexpected confidence", 0.25, confidenceCalculator.confidenceOf("b"), 1E-3);
+        Assert.assertEquals("Unexpected confidence", 1, confidenceCalculator.confidenceOf("c"), 1E-3);
+    }
+
+    @Test
+    public void testLongChainOfConflicts() {
+
+        List<String> tangles = new LinkedList<>();
+        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+        for(int i = 0; i < 20; i++) {
+            tangles.add("t" + i);
+            if(i > 0)
+                conflicts.add(new ConfidenceCalculator.Conflict("t" + (i-1), "t" + i));
+        }
+
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(tangles, conflicts, null);
+
+        // chain is symmetric
+        for(int i = 0; i < tangles.size(); i++)
+            Assert.assertEquals("Unexpected confidence", confidenceCalculator.confidenceOf("t" + i), confidenceCalculator.confidenceOf("t" + (19-i)), 1E-9);
+        // confidence at the end of a long chain converges towards 1-1/e
+        Assert.assertEquals("Unexpected confidence", 1 - Math.exp(-1), confidenceCalculator.confidenceOf("t0"), 1E-3);
+    }
+
+    @Test
+    public void testSampled() {
+
+        List<String> tangles = Arrays.asList("a", "b", "c");
+
+        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+        conflicts.add(new ConfidenceCalculator.Conflict("a", "b"));
+        conflicts.add(new ConfidenceCalculator.Conflict("b", "c"));
+
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(tangles, conflicts, null);
+        confidenceCalculator.setMaxExactTangles(0);
+        confidenceCalculator.setErrorBound(0.02);
+        confidenceCalculator.setRandomSeed(42);
+
+        Assert.assertTrue("Confidences were not sampled.", confidenceCalculator.isSampled());
+        for(String tangle : tangles) {
+            double expected = tangle.equals("b") ? 1/3.0 : 2/3.0;
+            double error = confidenceCalculator.errorOf(tangle);
+            Assert.assertTrue("Error bound not reached", error <= 0.02);
+            // 3 * error corresponds to ~99.9% certainty
+            Assert.assertEquals("Unexpected confidence", expected, confidenceCalculator.confidenceOf(tangle), 3 * error);
+        }
+    }
+
+    @Test
+    public void testManyIndependentConflicts() {
+
+        List<String> tangles = new LinkedList<>();
+        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+        for(int i = 0; i < 1000; i++) {
+            tangles.add("a" + i);
+            tangles.add("b" + i);
+            conflicts.add(new ConfidenceCalculator.Conflict("a" + i, "b" + i));
+        }
+
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(tangles, conflicts, null);
+
+        Assert.assertFalse("Independent conflicts should be calculated exactly.", confidenceCalculator.isSampled());
+        for(String tangle : tangles)
+            Assert.assertEquals("Unexpected confidence", 0.5, confidenceCalculator.confidenceOf(tangle), 1E-9);
+    }
+
+    @Test
+    public void testConflictIsSymmetric() {
+        ConfidenceCalculator.Conflict conflict = new ConfidenceCalculator.Conflict("a", "b");
+        ConfidenceCalculator.Conflict reversed = new ConfidenceCalculator.Conflict("b", "a");
+        Assert.assertEquals("Conflict depends on order of Tangles.", conflict, reversed);
+        Assert.assertEquals("Conflict depends on order of Tangles.", conflict.hashCode(), reversed.hashCode());
+        Assert.assertNotEquals("Different conflicts are equal.", conflict, new ConfidenceCalculator.Conflict("a", "c"));
+    }
+
+    @Test
+    public void testCliques() {
+
+        List<String> tangles = new LinkedList<>();
+        Set<ConfidenceCalculator.Conflict> conflicts = new HashSet<>();
+        for(int i = 0; i < 50; i++) {
+            tangles.add("a" + i);
+            for(int j = 0; j < i; j++)
+                conflicts.add(new ConfidenceCalculator.Conflict("a" + i, "a" + j));
+        }
+        tangles.addAll(Arrays.asList("b", "c", "d"));
+        conflicts.add(new ConfidenceCalculator.Conflict("b", "c"));
+        conflicts.add(new ConfidenceCalculator.Conflict("c", "d"));
+        conflicts.add(new ConfidenceCalculator.Conflict("b", "d"));
+
+        double[] initialProbabilities = new double[tangles.size()];
+        Arrays.fill(initialProbabilities, 0.01);
+        initialProbabilities[50] = 0.2;
+        initialProbabilities[51] = 0.3;
+        initialProbabilities[52] = 0.5;
+
+        ConfidenceCalculator confidenceCalculator = new ConfidenceCalculator(tangles, conflicts, initialProbabilities);
+
+        Assert.assertFalse("Cliques should be calculated exactly.", confidenceCalculator.isSampled());
+        Assert.assertEquals("Unexpected confidence", 1/50.0, confidenceCalculator.confidenceOf("a0"), 1E-9);
+        Assert.assertEquals("Unexpected confidence", 0.2, confidenceCalculator.confidenceOf("b"), 1E-9);
+        Assert.assertEquals("Unexpected confidence", 0.3, confidenceCalculator.confidenceOf("c"), 1E-9);
+        Assert.assertEquals("Unexpected confidence", 0.5, confidenceCalculator.confidenceOf("d"), 1E-9);
+    }
+}
@@ -11,6 +11,10 @@ import org.iota.ict.utils.crypto.AutoIndexedMerkleTree;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class EconomicClusterTest extends IctTestTemplate {
 
     @Test
@@ -65,6 +69,66 @@ public class EconomicClusterTest extends IctTestTemplate {
         assertApprovalRate(cluster, transaction, Math.max(markerAConfidence, markerBConfidence));
     }
 
+    @Test
+    public void testMarkerChain() {
+        Ict ict = createIct();
+        ControlledEconomicActor ca = new ControlledEconomicActor(new SerializableAutoIndexableMerkleTree(Trytes.randomSequenceOfLength(81), 3,3));
+        EconomicCluster cluster = new EconomicCluster(ict);
+        TrustedEconomicActor ta = new TrustedEconomicActor(ca.getAddress(), 1, cluster.getTransactionNumbering());
+        cluster.addActor(ta, false);
+
+        Transaction transaction = new TransactionBuilder().build();
+        Transaction child = buildChild(transaction);
+        Transaction grandChild = buildChild(child);
+        ict.submit(transaction);
+        ict.submit(child);
+        ict.submit(grandChild);
+        saveSleep(50);
+
+        sendMarker(ict, ca, child.hash, 17/26.0);
+        String olderTangle = EconomicActor.tangleID(child.hash, child.hash);
+        Assert.assertTrue(ta.getMarkedTangles().containsKey(olderTangle));
+
+        // the newer marker approves the older marked Tangle, but is less confident and must not supersede it
+        sendMarker(ict, ca, grandChild.hash, 11/26.0);
+        String newerTangle = EconomicActor.tangleID(grandChild.hash, grandChild.hash);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(olderTangle, newerTangle)), ta.getMarkedTangles().keySet());
+        Assert.assertTrue(ta.hasReferencedThrough(newerTangle, transaction.hash));
+        assertApprovalRate(cluster, transaction, 17/26.0);
+    }
+
+    @Test
+    public void testListenersNotifiedOfBackgroundMarking() {
+        Ict ict = createIct();
+        ControlledEconomicActor ca = new ControlledEconomicActor(new SerializableAutoIndexableMerkleTree(Trytes.randomSequenceOfLength(81), 3,3));
+        final EconomicCluster cluster = new EconomicCluster(ict);
+        TrustedEconomicActor ta = new TrustedEconomicActor(ca.getAddress(), 1, cluster.getTransactionNumbering());
+        cluster.addActor(ta, false);
+        final AtomicLong notifiedVersion = new AtomicLong(-1);
+        cluster.addMarkerListener(new Runnable() {
+            @Override
+            public void run() {
+                notifiedVersion.set(cluster.getVersion());
+            }
+        });
+
+        // a past cone too large to be marked at once
+        Transaction tip = new TransactionBuilder().build();
+        ict.submit(tip);
+        for(int i = 0; i < 3 * EconomicCluster.MARKING_CHUNK_SIZE; i++) {
+            tip = buildChild(tip);
+            ict.submit(tip);
+        }
+        saveSleep(50);
+
+        sendMarker(ict, ca, tip.hash, 1);
+        for(int i = 0; i < 100 && ta.hasPendingMarking(); i++)
+            saveSleep(50);
+        saveSleep(50);
+        Assert.assertFalse("Past cone was not marked.", ta.hasPendingMarking());
+        Assert.assertEquals("Listeners were not notified of the last chunk.", cluster.getVersion(), notifiedVersion.get());
+    }
+
     private Transaction buildChild(Transaction parent) {
         TransactionBuilder childBuilder = new TransactionBuilder();
         childBuilder.branchHash = parent.hash;
@@ -0,0 +1,38 @@
+package org.iota.ec.model;
+
+import org.iota.ict.utils.Trytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashTest {
+
+    @Test
+    public void testRoundTrip() {
+        for(int i = 0; i < 100; i++) {
+            String trytes = Trytes.randomSequenceOfLength(Hash.LENGTH);
+            Hash hash = Hash.of(trytes);
+            Assert.assertEquals(trytes, hash.toString());
+            Assert.assertEquals(hash, Hash.of(trytes));
+            Assert.assertEquals(hash.hashCode(), Hash.of(trytes).hashCode());
+        }
+        Assert.assertNotEquals(Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH)), Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTryte() {
+        Hash.of(Trytes.randomSequenceOfLength(Hash.LENGTH - 1) + "a");
+    }
+
+    @Test
+    public void testTangleId() {
+        String reference1 = Trytes.randomSequenceOfLength(Hash.LENGTH);
+        String reference2 = Trytes.randomSequenceOfLength(Hash.LENGTH);
+        String tangle = EconomicActor.tangleID(reference1, reference2);
+
+        TangleId tangleId = TangleId.of(tangle);
+        Assert.assertEquals(tangle, tangleId.toString());
+        Assert.assertEquals(TangleId.of(EconomicActor.tangleID(reference2, reference1)), tangleId);
+        Assert.assertEquals(Hash.of(tangle.substring(0, Hash.LENGTH)), tangleId.getReference1());
+        Assert.assertEquals(Hash.of(tangle.substring(Hash.LENGTH)), tangleId.getReference2());
+    }
+}
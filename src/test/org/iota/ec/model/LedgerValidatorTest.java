@@ -46,6 +46,35 @@ public class LedgerValidatorTest extends IctTestTemplate {
         Assert.assertTrue("Tangle was not recognized as valid after missing dependency was added.", isTangleValid);
     }
 
+    @Test
+    public void testResolveDependencyOnArrival() {
+        Ict ict = createIct();
+        LedgerValidator validator = new LedgerValidator(ict);
+        ict.addListener(validator);
+
+        TransactionBuilder builder = new TransactionBuilder();
+        Transaction transaction1 = builder.build();
+        builder.trunkHash = transaction1.hash;
+        Transaction transaction2 = builder.build();
+        ict.submit(transaction2);
+        saveSleep(50);
+
+        try {
+            validator.areTanglesCompatible(transaction2.hash, transaction2.hash);
+            Assert.fail("No exception thrown despite incomplete Tangle.");
+        } catch (LedgerValidator.IncompleteTangleException incompleteTangleException) {
+            Assert.assertEquals("Wrong transaction reported as missing.", transaction1.hash, incompleteTangleException.unavailableTransactionHash);
+        }
+        long dependencyVersion = validator.getDependencyVersion();
+
+        ict.submit(transaction1);
+        saveSleep(50);
+
+        Assert.assertTrue("Arrival of missing transaction was not logged.", validator.getDependenciesResolvedSince(dependencyVersion).contains(transaction1.hash));
+        Assert.assertTrue("Tangle was not recognized as valid after missing dependency was added.", validator.areTanglesCompatible(transaction2.hash, transaction2.hash));
+        validator.shutdown();
+    }
+
     @Test
     public void testStoreValidTransfers() {
         Ict ict = createIct();
@@ -57,8 +86,8 @@ public class LedgerValidatorTest extends IctTestTemplate {
         boolean isTangleValid = validator.isTangleValid(transfer2);
 
         Assert.assertTrue("Valid Tangle was recognized as invalid.", isTangleValid);
-        Assert.assertTrue("Transfer was not added to valid transfer set.", validator.validTransfers.contains(transfer1));
-        Assert.assertTrue("Transfer was not added to valid transfer set.", validator.validTransfers.contains(transfer2));
+        Assert.assertTrue("Transfer was not added to valid transfer set.", validator.validTransfers.contains(Hash.of(transfer1)));
+        Assert.assertTrue("Transfer was not added to valid transfer set.", validator.validTransfers.contains(Hash.of(transfer2)));
     }
 
     @Test
@@ -86,6 +115,64 @@ public class LedgerValidatorTest extends IctTestTemplate {
         Assert.assertTrue("Double spend failed despite sufficient funds.", validator.areTanglesCompatible(spend1, spend2));
     }
 
+    @Test
+    public void testConfirmedFrontier() {
+
+        Ict ict = createIct();
+        LedgerValidator validator = new LedgerValidator(ict);
+        BigInteger value = BigInteger.valueOf(1000);
+
+        SignatureSchemeImplementation.PrivateKey privateKey = SignatureSchemeImplementation.derivePrivateKeyFromSeed(Trytes.randomSequenceOfLength(81), 0, 1);
+        validator.changeInitialBalance(privateKey.deriveAddress(), value);
+
+        String spend1 = spendFunds(ict, privateKey, value, Trytes.randomSequenceOfLength(Transaction.Field.ADDRESS.tryteLength));
+        String spend2 = spendFunds(ict, privateKey, value, Trytes.randomSequenceOfLength(Transaction.Field.ADDRESS.tryteLength));
+        saveSleep(50);
+
+        Assert.assertTrue("Solid Tangle was recognized as not solid.", validator.isTangleSolid(spend2));
+        Set<String> changedAddresses = validator.confirm(spend1);
+        Assert.assertTrue("Spent address was not reported as changed.", changedAddresses.contains(privateKey.deriveAddress()));
+        Assert.assertTrue("Transaction was not confirmed.", validator.isConfirmed(spend1));
+        Assert.assertFalse("Funds spent in confirmed ledger were spent again.", validator.isTangleSolid(spend2));
+    }
+
+    @Test
+    public void testMaxPastConeSize() {
+        Ict ict = createIct();
+        String inputAddress = Trytes.randomSequenceOfLength(81);
+        BigInteger value = BigInteger.valueOf(1000);
+
+        Bundle bundleWithInvalidSignature = buildBundleWithInvalidSignature(inputAddress, value);
+        submitBundle(ict, bundleWithInvalidSignature);
+        String tip = bundleWithInvalidSignature.getHead().hash;
+        for(int i = 0; i < 5; i++)
+            tip = mergeTangles(ict, tip, tip);
+
+        LedgerValidator limitedValidator = new LedgerValidator(ict);
+        limitedValidator.setMaxPastConeSize(3);
+        Assert.assertTrue("Transactions beyond the limit were validated.", limitedValidator.isTangleValid(tip));
+
+        LedgerValidator unlimitedValidator = new LedgerValidator(ict);
+        Assert.assertFalse("Invalid Tangle was recognized as valid.", unlimitedValidator.isTangleValid(tip));
+    }
+
+    @Test
+    public void testSharedTransactionBeyondLimit() {
+        Ict ict = createIct();
+        Bundle bundleWithInvalidSignature = buildBundleWithInvalidSignature(Trytes.randomSequenceOfLength(81), BigInteger.valueOf(1000));
+        submitBundle(ict, bundleWithInvalidSignature);
+        String shared = mergeTangles(ict, bundleWithInvalidSignature.getHead().hash, bundleWithInvalidSignature.getHead().hash);
+        String intermediate = mergeTangles(ict, shared, shared);
+        String distantRoot = mergeTangles(ict, intermediate, intermediate);
+        String closeRoot = mergeTangles(ict, shared, shared);
+
+        LedgerValidator validator = new LedgerValidator(ict);
+        validator.setMaxPastConeSize(3);
+        Assert.assertTrue("Transactions beyond the limit were validated.", validator.isTangleValid(distantRoot));
+        // the invalid transfer is beyond the limit of the distant root but within the limit of the close one
+        Assert.assertFalse("Transaction validated only up to the limit was considered valid for another root.", validator.isTangleValid(closeRoot));
+    }
+
     private static String mergeTangles(Ict ict, String branch, String trunk) {
         TransactionBuilder builder = new TransactionBuilder();
         builder.branchHash = branch;
@@ -123,6 +210,26 @@ public class LedgerValidatorTest extends IctTestTemplate {
         Assert.assertFalse("Inalid Tangle was recognized as valid.", isTangleValid);
     }
 
+    @Test
+    public void testSharedTransferVerifier() {
+        Ict ict = createIct();
+        TransferVerifier verifier = new TransferVerifier(2, TransferVerifier.DEFAULT_CACHE_CAPACITY);
+        LedgerValidator validator = new LedgerValidator(ict);
+        validator.setTransferVerifier(verifier);
+        String inputAddress = Trytes.randomSequenceOfLength(81);
+        BigInteger value = BigInteger.valueOf(1000);
+        validator.changeInitialBalance(inputAddress, value);
+
+        Bundle bundleWithInvalidSignature = buildBundleWithInvalidSignature(inputAddress, value);
+        submitBundle(ict, bundleWithInvalidSignature);
+        verifier.offer(bundleWithInvalidSignature.getHead());
+        saveSleep(100);
+
+        Assert.assertEquals("Transfer was not verified in advance.", TransferVerifier.Result.INVALID_SIGNATURE, verifier.getResult(bundleWithInvalidSignature.getHead().hash));
+        Assert.assertFalse("Inalid Tangle was recognized as valid.", validator.isTangleValid(bundleWithInvalidSignature.getHead().hash));
+        verifier.shutdown();
+    }
+
     @Test
     public void testValidSignature() {
         Ict ict = createIct();
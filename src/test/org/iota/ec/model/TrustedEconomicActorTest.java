@@ -0,0 +1,288 @@
+package org.iota.ec.model;
+
+import org.iota.ict.model.bundle.Bundle;
+import org.iota.ict.model.transaction.Transaction;
+import org.iota.ict.model.transaction.TransactionBuilder;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.*;
+
+public class TrustedEconomicActorTest {
+
+    @Test
+    public void testConfidenceOfMostConfidentApprover() {
+        Random random = new Random(5);
+        for(int round = 0; round < 20; round++) {
+            UnsignedMarkersActor actor = new UnsignedMarkersActor();
+            TestTangle tangle = new TestTangle(random, 150);
+            for(int i = 0; i < 40; i++) {
+                // most markers are newer than the previous ones, the others are inherited by reference if approved
+                actor.signatureIndex = random.nextInt(4) == 0 ? random.nextInt(i + 1) : i;
+                Transaction marked = tangle.randomTransaction(random);
+                actor.processMarker(tangle.buildMarker(marked, random.nextInt(27) / 26.0));
+                assertConfidences(actor, tangle);
+            }
+        }
+    }
+
+    @Test
+    public void testMarkLargePastConeInChunks() {
+        UnsignedMarkersActor actor = new UnsignedMarkersActor();
+        actor.setInlineMarkingBudget(EconomicCluster.MARKING_CHUNK_SIZE);
+        TestTangle tangle = new TestTangle(new Random(1), 5 * EconomicCluster.MARKING_CHUNK_SIZE);
+        Transaction tip = tangle.transactions.get(tangle.transactions.size() - 1);
+
+        actor.processMarker(tangle.buildMarker(tip, 0.5));
+        Assert.assertTrue("Marking was not left for the background.", actor.hasPendingMarking());
+        int referenced = 0;
+        for(Transaction transaction : tangle.transactions)
+            if(actor.hasReferenced(transaction.hash))
+                referenced++;
+        // each traversed transaction approves its two references
+        Assert.assertTrue("Marking exceeded the budget.", referenced <= 2 * EconomicCluster.MARKING_CHUNK_SIZE + 2);
+
+        int chunks = 0;
+        while (actor.hasPendingMarking()) {
+            actor.continueMarking(EconomicCluster.MARKING_CHUNK_SIZE);
+            chunks++;
+        }
+        Assert.assertTrue("Past cone was not marked in chunks.", chunks >= 2);
+        assertPastCones(actor, tangle);
+    }
+
+    @Test
+    public void testInheritedPastConesEqualTraversedOnes() {
+        Random random = new Random(9);
+        int releasedTangles = 0;
+        for(int round = 0; round < 10; round++) {
+            UnsignedMarkersActor actor = new UnsignedMarkersActor();
+            TestTangle tangle = new TestTangle(random, 300);
+            for(int i = 0; i < 30; i++) {
+                // a chain of markers on increasingly recent transactions, some of them out of order
+                actor.signatureIndex = random.nextInt(5) == 0 ? random.nextInt(i + 1) : i;
+                int newest = 10 * i + 9;
+                Transaction marked = tangle.transactions.get(newest - random.nextInt(10));
+                actor.processMarker(tangle.buildMarker(marked, random.nextInt(27) / 26.0));
+                assertPastCones(actor, tangle);
+            }
+            releasedTangles += actor.pollReleasedTangles().size();
+        }
+        Assert.assertTrue("No past cone was taken over.", releasedTangles > 0);
+    }
+
+    @Test
+    public void testMissingTransactionArrivesWhileMarking() {
+        Random random = new Random(4);
+        for(int round = 0; round < 10; round++) {
+            UnsignedMarkersActor actor = new UnsignedMarkersActor();
+            actor.setInlineMarkingBudget(20);
+            TestTangle tangle = new TestTangle(random, 500);
+            List<Transaction> withheld = new LinkedList<>();
+            for(int i = 0; i < 10; i++)
+                withheld.add(tangle.withhold(tangle.transactions.get(1 + random.nextInt(400))));
+
+            actor.processMarker(tangle.buildMarker(tangle.transactions.get(499), 0.7));
+            actor.processMarker(tangle.buildMarker(tangle.transactions.get(450), 0.3));
+            while (actor.hasPendingMarking() || !withheld.isEmpty()) {
+                actor.continueMarking(1 + random.nextInt(20));
+                if(!withheld.isEmpty() && random.nextInt(3) == 0)
+                    actor.processTransaction(tangle.release(withheld.remove(0)));
+            }
+            assertPastCones(actor, tangle);
+            assertConfidences(actor, tangle);
+        }
+    }
+
+    @Test
+    public void testOnlyAtLeastAsConfidentMarkersSupersede() {
+        TestTangle tangle = new TestTangle(new Random(2), 50);
+        Transaction older = tangle.transactions.get(20), newer = tangle.transactions.get(49);
+        Assume.assumeTrue(tangle.pastConeOf(EconomicActor.tangleID(newer.hash, newer.hash)).contains(older.hash));
+
+        for(double newerConfidence : new double[] {11 / 26.0, 22 / 26.0}) {
+            UnsignedMarkersActor actor = new UnsignedMarkersActor();
+            actor.signatureIndex = 0;
+            String olderTangle = actor.processMarker(tangle.buildMarker(older, 17 / 26.0));
+            actor.signatureIndex = 1;
+            String newerTangle = actor.processMarker(tangle.buildMarker(newer, newerConfidence));
+
+            Set<String> expectedTangles = new HashSet<>(Collections.singleton(newerTangle));
+            // a less confident marker inherits the older past cone by reference instead of releasing it
+            if(newerConfidence < 17 / 26.0)
+                expectedTangles.add(olderTangle);
+            Assert.assertEquals(expectedTangles, actor.getMarkedTangles().keySet());
+            Assert.assertEquals(Math.max(17 / 26.0, newerConfidence), actor.getConfidence(older.hash), 1E-3);
+            assertPastCones(actor, tangle);
+        }
+    }
+
+    @Test
+    public void testFindTanglesReferencedThrough() {
+        Random random = new Random(3);
+        UnsignedMarkersActor actor = new UnsignedMarkersActor();
+        TestTangle tangle = new TestTangle(random, 200);
+        List<String> marked = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            // less confident markers do not release the older ones
+            actor.signatureIndex = i;
+            marked.add(actor.processMarker(tangle.buildMarker(tangle.randomTransaction(random), (20 - 3 * i) / 26.0)));
+        }
+        List<String> changed = marked.subList(1, 3);
+
+        Map<Hash, List<TangleId>> tanglesByReference = new HashMap<>();
+        Set<TangleId> expected = new HashSet<>();
+        for(int i = 0; i < 50; i++) {
+            String ref1 = tangle.randomTransaction(random).hash, ref2 = tangle.randomTransaction(random).hash;
+            TangleId cached = TangleId.of(EconomicActor.tangleID(ref1, ref2));
+            for(String ref : new HashSet<>(Arrays.asList(ref1, ref2))) {
+                if(!tanglesByReference.containsKey(Hash.of(ref)))
+                    tanglesByReference.put(Hash.of(ref), new LinkedList<TangleId>());
+                tanglesByReference.get(Hash.of(ref)).add(cached);
+            }
+            for(String changedTangle : changed)
+                if(actor.hasReferencedThrough(changedTangle, ref1) || actor.hasReferencedThrough(changedTangle, ref2))
+                    expected.add(cached);
+        }
+        Assume.assumeFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actor.findTanglesReferencedThrough(changed, tanglesByReference));
+    }
+
+    /**
+     * Compares the past cones of all marked Tangles to those found by a full traversal.
+     * */
+    private static void assertPastCones(TrustedEconomicActor actor, TestTangle tangle) {
+        Set<String> markedTangles = actor.getMarkedTangles().keySet();
+        for(Transaction transaction : tangle.transactions) {
+            boolean referencedByAny = false;
+            for(String markedTangle : markedTangles) {
+                boolean referenced = tangle.pastConeOf(markedTangle).contains(transaction.hash);
+                Assert.assertEquals(referenced, actor.hasReferencedThrough(markedTangle, transaction.hash));
+                referencedByAny |= referenced;
+            }
+            Assert.assertEquals(referencedByAny, actor.hasReferenced(transaction.hash));
+        }
+    }
+
+    private static void assertConfidences(TrustedEconomicActor actor, TestTangle tangle) {
+        Map<String, Double> markedTangles = actor.getMarkedTangles();
+        for(Transaction transaction : tangle.transactions) {
+            double expected = 0;
+            for(Map.Entry<String, Double> markedTangle : markedTangles.entrySet())
+                if(tangle.pastConeOf(markedTangle.getKey()).contains(transaction.hash))
+                    expected = Math.max(expected, markedTangle.getValue());
+            Assert.assertEquals(expected, actor.getConfidence(transaction.hash), 1E-9);
+        }
+    }
+
+    /**
+     * Accepts markers without signature, so that markers can be built without key generation.
+     * */
+    static class UnsignedMarkersActor extends TrustedEconomicActor {
+
+        int signatureIndex = 0;
+
+        UnsignedMarkersActor() {
+            super(Transaction.NULL_TRANSACTION.address(), 1);
+        }
+
+        @Override
+        protected int deriveSignatureIndex(Bundle marker) {
+            return signatureIndex;
+        }
+    }
+
+    /**
+     * A random Tangle whose transactions reference each other like stored transactions do.
+     * */
+    static class TestTangle {
+
+        final List<Transaction> transactions = new ArrayList<>();
+        final Map<String, Transaction> transactionsByHash = new HashMap<>();
+        private final Map<String, Set<String>> pastConeByTangle = new HashMap<>();
+
+        TestTangle(Random random, int size) {
+            // references itself, so that past cones are complete
+            transactions.add(Transaction.NULL_TRANSACTION);
+            transactionsByHash.put(Transaction.NULL_TRANSACTION.hash, Transaction.NULL_TRANSACTION);
+            for(int i = 1; i < size; i++) {
+                // mostly recent transactions, like tips selected by random walks
+                Transaction recent = transactions.get(Math.max(0, transactions.size() - 1 - random.nextInt(10)));
+                add(build(recent.hash, randomTransaction(random).hash, ""));
+            }
+        }
+
+        Transaction randomTransaction(Random random) {
+            return transactions.get(random.nextInt(transactions.size()));
+        }
+
+        Bundle buildMarker(Transaction marked, double confidence) {
+            Transaction tail = build(marked.hash, marked.hash, EconomicActor.encodeConfidence(confidence, Transaction.Field.TAG.tryteLength));
+            tail.setBranch(marked);
+            tail.setTrunk(marked);
+            return new Bundle(tail);
+        }
+
+        Set<String> pastConeOf(String tangle) {
+            Set<String> pastCone = pastConeByTangle.get(tangle);
+            if(pastCone != null)
+                return pastCone;
+            pastCone = new HashSet<>();
+            pastConeByTangle.put(tangle, pastCone);
+            LinkedList<String> toTraverse = new LinkedList<>(Arrays.asList(tangle.substring(0, 81), tangle.substring(81)));
+            while (!toTraverse.isEmpty()) {
+                String hash = toTraverse.poll();
+                Transaction transaction = transactionsByHash.get(hash);
+                if(pastCone.add(hash) && transaction != null) {
+                    toTraverse.add(transaction.branchHash());
+                    toTraverse.add(transaction.trunkHash());
+                }
+            }
+            return pastCone;
+        }
+
+        /**
+         * Removes the transaction from the references of its approvers, as if it had not arrived yet.
+         * */
+        Transaction withhold(Transaction transaction) {
+            for(Transaction approver : transactions) {
+                if(approver.getBranch() == transaction)
+                    approver.setBranch(null);
+                if(approver.getTrunk() == transaction)
+                    approver.setTrunk(null);
+            }
+            return transaction;
+        }
+
+        /**
+         * Reverses {@link #withhold(Transaction)}.
+         * */
+        Transaction release(Transaction transaction) {
+            for(Transaction approver : transactions) {
+                if(approver.branchHash().equals(transaction.hash))
+                    approver.setBranch(transaction);
+                if(approver.trunkHash().equals(transaction.hash))
+                    approver.setTrunk(transaction);
+            }
+            return transaction;
+        }
+
+        private void add(Transaction transaction) {
+            transaction.setBranch(transactionsByHash.get(transaction.branchHash()));
+            transaction.setTrunk(transactionsByHash.get(transaction.trunkHash()));
+            transactions.add(transaction);
+            transactionsByHash.put(transaction.hash, transaction);
+        }
+
+        private static Transaction build(String branchHash, String trunkHash, String tag) {
+            TransactionBuilder builder = new TransactionBuilder();
+            builder.branchHash = branchHash;
+            builder.trunkHash = trunkHash;
+            builder.tag = tag;
+            builder.isBundleHead = true;
+            builder.isBundleTail = true;
+            return builder.build();
+        }
+    }
+}
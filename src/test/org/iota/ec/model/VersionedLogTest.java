@@ -0,0 +1,43 @@
+package org.iota.ec.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class VersionedLogTest {
+
+    @Test
+    public void testPollSinceRegistration() {
+        VersionedLog<String> log = new VersionedLog<>();
+        Object early = new Object(), late = new Object();
+        log.add("A");
+        log.register(early);
+        log.add("B");
+        log.register(late);
+        log.add("C");
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("B", "C")), log.poll(early));
+        Assert.assertEquals(Collections.singleton("C"), log.poll(late));
+        Assert.assertTrue(log.poll(early).isEmpty());
+    }
+
+    @Test
+    public void testDropEntriesReadByAll() {
+        VersionedLog<String> log = new VersionedLog<>();
+        Object fast = new Object(), slow = new Object();
+        log.register(fast);
+        log.register(slow);
+        log.add("A");
+        log.add("B");
+
+        log.poll(fast);
+        Assert.assertEquals("Entries not read by all readers were dropped.", new HashSet<>(Arrays.asList("A", "B")), log.getSince(0));
+        log.poll(slow);
+        Assert.assertNull("Entries read by all readers were kept.", log.getSince(0));
+        Assert.assertEquals(2, log.getVersion());
+        Assert.assertTrue(log.getSince(2).isEmpty());
+    }
+}